@@ -0,0 +1,258 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing;
+
+import com.google.zxing.common.BitMatrix;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A {@link Writer} which remembers the {@link BitMatrix} encoded for recent requests, such as
+ * from a {@link MultiFormatWriter}, so that the same contents encoded again with the same format,
+ * size and hints are not encoded again.</p>
+ *
+ * <p>Entries are evicted least recently used first to keep the memory taken by cached matrices
+ * under a given number of bytes. The cache is split into stripes by key, each with its own lock
+ * and its share of the bound, so that threads encoding different contents seldom wait for each
+ * other. Matrices are copied on the way in and out, since {@link BitMatrix} is mutable. Encoding
+ * happens outside any lock, so threads missing on the same key at once may each encode it.</p>
+ *
+ * <p>Hints are compared with {@link Object#equals(Object)}, and should not be modified once
+ * passed in.</p>
+ */
+public final class CachingWriter implements Writer {
+
+  private static final int DEFAULT_STRIPES = 16;
+  // Rough size of an entry besides its matrix and contents: key, hints, matrix and map entry
+  private static final int ENTRY_OVERHEAD = 200;
+
+  private final Writer delegate;
+  private final Stripe[] stripes;
+  private final AtomicLong hitCount;
+  private final AtomicLong missCount;
+  private final AtomicLong evictionCount;
+
+  /**
+   * @param delegate {@link Writer} to encode with on a miss
+   * @param maxBytes approximate bound on the memory taken by cached entries
+   */
+  public CachingWriter(Writer delegate, long maxBytes) {
+    this(delegate, maxBytes, DEFAULT_STRIPES);
+  }
+
+  /**
+   * @param delegate {@link Writer} to encode with on a miss
+   * @param maxBytes approximate bound on the memory taken by cached entries
+   * @param numStripes number of independently locked parts to split the cache into
+   */
+  public CachingWriter(Writer delegate, long maxBytes, int numStripes) {
+    if (maxBytes < 0 || numStripes < 1) {
+      throw new IllegalArgumentException();
+    }
+    this.delegate = delegate;
+    stripes = new Stripe[numStripes];
+    for (int i = 0; i < numStripes; i++) {
+      stripes[i] = new Stripe(maxBytes / numStripes);
+    }
+    hitCount = new AtomicLong();
+    missCount = new AtomicLong();
+    evictionCount = new AtomicLong();
+  }
+
+  @Override
+  public BitMatrix encode(String contents, BarcodeFormat format, int width, int height)
+      throws WriterException {
+    return encode(contents, format, width, height, null);
+  }
+
+  @Override
+  public BitMatrix encode(String contents,
+                          BarcodeFormat format,
+                          int width,
+                          int height,
+                          Map<EncodeHintType,?> hints) throws WriterException {
+    Key key = new Key(contents, format, width, height, hints);
+    Stripe stripe = getStripe(key);
+    BitMatrix cached = stripe.get(key);
+    if (cached != null) {
+      hitCount.incrementAndGet();
+      return cached.clone();
+    }
+    missCount.incrementAndGet();
+    BitMatrix result = delegate.encode(contents, format, width, height, hints);
+    evictionCount.addAndGet(stripe.put(key, result.clone()));
+    return result;
+  }
+
+  private Stripe getStripe(Key key) {
+    int hash = key.hashCode();
+    // Spread the high bits down, as HashMap does, before taking a stripe by the low ones
+    hash ^= (hash >>> 20) ^ (hash >>> 12);
+    hash ^= (hash >>> 7) ^ (hash >>> 4);
+    return stripes[(hash & Integer.MAX_VALUE) % stripes.length];
+  }
+
+  /**
+   * @return number of requests answered from the cache
+   */
+  public long getHitCount() {
+    return hitCount.get();
+  }
+
+  /**
+   * @return number of requests passed on to the delegate {@link Writer}
+   */
+  public long getMissCount() {
+    return missCount.get();
+  }
+
+  /**
+   * @return number of entries evicted to stay under the memory bound
+   */
+  public long getEvictionCount() {
+    return evictionCount.get();
+  }
+
+  /**
+   * @return approximate memory taken by cached entries, in bytes
+   */
+  public long getSizeInBytes() {
+    long size = 0;
+    for (Stripe stripe : stripes) {
+      size += stripe.getSizeInBytes();
+    }
+    return size;
+  }
+
+  /**
+   * Removes all entries, without counting them as evictions.
+   */
+  public void clear() {
+    for (Stripe stripe : stripes) {
+      stripe.clear();
+    }
+  }
+
+  private static long getSizeInBytes(Key key, BitMatrix matrix) {
+    return 4L * matrix.getRowSize() * matrix.getHeight() + 2L * key.contents.length() +
+        ENTRY_OVERHEAD;
+  }
+
+  /**
+   * One independently locked part of the cache, holding entries in least recently used order.
+   */
+  private static final class Stripe {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key,BitMatrix> entries;
+    private long sizeInBytes;
+
+    Stripe(long maxBytes) {
+      this.maxBytes = maxBytes;
+      entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    synchronized BitMatrix get(Key key) {
+      return entries.get(key);
+    }
+
+    /**
+     * @return number of entries evicted to make room
+     */
+    synchronized int put(Key key, BitMatrix matrix) {
+      long entrySize = CachingWriter.getSizeInBytes(key, matrix);
+      if (entrySize > maxBytes) {
+        return 0;
+      }
+      BitMatrix previous = entries.put(key, matrix);
+      if (previous != null) {
+        sizeInBytes -= CachingWriter.getSizeInBytes(key, previous);
+      }
+      sizeInBytes += entrySize;
+      int evicted = 0;
+      Iterator<Map.Entry<Key,BitMatrix>> iterator = entries.entrySet().iterator();
+      while (sizeInBytes > maxBytes) {
+        Map.Entry<Key,BitMatrix> eldest = iterator.next();
+        sizeInBytes -= CachingWriter.getSizeInBytes(eldest.getKey(), eldest.getValue());
+        iterator.remove();
+        evicted++;
+      }
+      return evicted;
+    }
+
+    synchronized long getSizeInBytes() {
+      return sizeInBytes;
+    }
+
+    synchronized void clear() {
+      entries.clear();
+      sizeInBytes = 0;
+    }
+  }
+
+  /**
+   * The parameters of an encode request. No hints and empty hints are the same.
+   */
+  private static final class Key {
+
+    private final String contents;
+    private final BarcodeFormat format;
+    private final int width;
+    private final int height;
+    private final Map<EncodeHintType,?> hints;
+    private final int hashCode;
+
+    Key(String contents, BarcodeFormat format, int width, int height, Map<EncodeHintType,?> hints) {
+      this.contents = contents;
+      this.format = format;
+      this.width = width;
+      this.height = height;
+      if (hints == null || hints.isEmpty()) {
+        this.hints = Collections.emptyMap();
+      } else {
+        this.hints = new EnumMap<EncodeHintType,Object>(hints);
+      }
+      int hash = contents.hashCode();
+      hash = 31 * hash + format.ordinal();
+      hash = 31 * hash + width;
+      hash = 31 * hash + height;
+      hash = 31 * hash + this.hints.hashCode();
+      hashCode = hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key other = (Key) o;
+      return contents.equals(other.contents) && format == other.format &&
+          width == other.width && height == other.height && hints.equals(other.hints);
+    }
+
+    @Override
+    public int hashCode() {
+      return hashCode;
+    }
+  }
+
+}
@@ -16,7 +16,10 @@
 
 package com.google.zxing;
 
+import com.google.zxing.common.GridSampler;
+
 import java.util.List;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Encapsulates a type of hint that a caller may pass to a barcode reader to help it
@@ -98,6 +101,22 @@ public enum DecodeHintType {
    */
   ALLOWED_EAN_EXTENSIONS(int[].class),
 
+  /**
+   * When trying harder, scan the rows of the image for one-dimensional barcodes in parallel
+   * using this executor. Rows are still prioritized from the middle outward, so the result is
+   * the same as that of a sequential scan. Readers which keep state across rows, those for the
+   * RSS formats, are not run in parallel: they are given the rows a sequential scan would have
+   * shown them, in order, after the other readers are done.
+   * Maps to an {@link ExecutorService}.
+   */
+  ROW_SCAN_EXECUTOR(ExecutorService.class),
+
+  /**
+   * Samples the grid of modules of a 2D barcode with this, rather than with the sampler installed
+   * globally with {@link GridSampler#setGridSampler(GridSampler)}. Maps to a {@link GridSampler}.
+   */
+  GRID_SAMPLER(GridSampler.class),
+
   // End of enumeration values.
   ;
 
@@ -44,6 +44,13 @@ public enum EncodeHintType {
    */
   DATA_MATRIX_SHAPE,
 
+  /**
+   * Specifies whether to encode Data Matrix data with the fewest codewords, as found by
+   * {@link com.google.zxing.datamatrix.encoder.MinimalEncoder}, rather than with the look-ahead
+   * rules of ISO/IEC 16022 annex P (type {@link Boolean}, or "true" or "false" {@link String} value).
+   */
+  DATA_MATRIX_COMPACT,
+
   /**
    * Specifies a minimum barcode size (type {@link Dimension}). Only applicable to Data Matrix now.
    *
@@ -68,6 +75,20 @@ public enum EncodeHintType {
    */
   MARGIN,
 
+  /**
+   * Specifies whether to split QR Code content into segments of different modes where that takes
+   * fewer bits, rather than encode it all in one mode (type {@link Boolean}, or "true" or "false"
+   * {@link String} value).
+   */
+  QR_COMPACT,
+
+  /**
+   * Evaluates the eight mask patterns of a QR Code in parallel using this executor; the mask
+   * chosen is the same as when evaluating them one after another.
+   * (Type {@link java.util.concurrent.ExecutorService ExecutorService}).
+   */
+  QR_MASK_EXECUTOR,
+
   /**
    * Specifies whether to use compact mode for PDF417 (type {@link Boolean}, or "true" or "false"
    * {@link String} value).
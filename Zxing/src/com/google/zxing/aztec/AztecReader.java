@@ -29,6 +29,7 @@ import com.google.zxing.ResultPointCallback;
 import com.google.zxing.aztec.decoder.Decoder;
 import com.google.zxing.aztec.detector.Detector;
 import com.google.zxing.common.DecoderResult;
+import com.google.zxing.common.GridSampler;
 
 import java.util.List;
 import java.util.Map;
@@ -58,7 +59,7 @@ public final class AztecReader implements Reader {
 
     NotFoundException notFoundException = null;
     FormatException formatException = null;
-    Detector detector = new Detector(image.getBlackMatrix());
+    Detector detector = new Detector(image.getBlackMatrix(), GridSampler.getInstance(hints));
     ResultPoint[] points = null;
     DecoderResult decoderResult = null;
     try {
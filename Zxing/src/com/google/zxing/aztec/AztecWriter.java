@@ -21,6 +21,7 @@ import com.google.zxing.EncodeHintType;
 import com.google.zxing.Writer;
 import com.google.zxing.aztec.encoder.AztecCode;
 import com.google.zxing.aztec.encoder.Encoder;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 
 import java.nio.charset.Charset;
@@ -79,13 +80,25 @@ public final class AztecWriter implements Writer {
     int topPadding = (outputHeight - (inputHeight * multiple)) / 2;
 
     BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+    BitArray inputRow = null;
+    BitArray row = new BitArray(outputWidth);
 
     for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
-      // Write the contents of this row of the barcode
-      for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
-        if (input.get(inputX, inputY)) {
-          output.setRegion(outputX, outputY, multiple, multiple);
-        }
+      // Scale this row of the barcode once, filling each run of black modules at a time, then copy
+      // it into all the output rows it covers
+      inputRow = input.getRow(inputY, inputRow);
+      row.clear();
+      int start = inputRow.getNextSet(0);
+      if (start >= inputWidth) {
+        continue;
+      }
+      while (start < inputWidth) {
+        int end = Math.min(inputRow.getNextUnset(start), inputWidth);
+        row.setRange(leftPadding + start * multiple, leftPadding + end * multiple);
+        start = end < inputWidth ? inputRow.getNextSet(end) : inputWidth;
+      }
+      for (int y = outputY; y < outputY + multiple; y++) {
+        output.setRow(y, row);
       }
     }
     return output;
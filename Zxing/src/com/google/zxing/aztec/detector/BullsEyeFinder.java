@@ -0,0 +1,283 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.aztec.detector;
+
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * <p>Finds candidate centers of Aztec Code bull's eyes anywhere in an image, much as
+ * {@link com.google.zxing.qrcode.detector.FinderPatternFinder} does for QR Code finder
+ * patterns.</p>
+ *
+ * <p>Any line through the center of a bull's eye crosses white/black/white/black/white/black/white
+ * modules in 1:1:1:1:1:1:1 ratio, the innermost three rings and the center module, whatever the
+ * size of the Aztec Code. Rows are scanned for runs in that ratio, which are then cross-checked
+ * vertically, horizontally and diagonally. Candidates are ranked by the number of rows which confirmed
+ * them.</p>
+ */
+final class BullsEyeFinder {
+
+  private static final int MAX_CANDIDATES = 3;
+
+  private final BitMatrix image;
+  private final int[] crossCheckStateCount;
+  private final List<Candidate> candidates;
+
+  BullsEyeFinder(BitMatrix image) {
+    this.image = image;
+    this.crossCheckStateCount = new int[7];
+    this.candidates = new ArrayList<>();
+  }
+
+  /**
+   * @return the most likely bull's eye centers, best first; possibly none
+   */
+  Detector.Point[] find() {
+    int maxI = image.getHeight();
+    int maxJ = image.getWidth();
+    int[] stateCount = new int[7];
+    BitArray row = null;
+    for (int i = 0; i < maxI; i++) {
+      row = image.getRow(i, row);
+      // Run lengths are read a word at a time, so blank stretches of the row cost little
+      int runs = 0;
+      boolean black = row.get(0);
+      int j = 0;
+      while (j < maxJ) {
+        int end = Math.min(black ? row.getNextUnset(j) : row.getNextSet(j), maxJ);
+        System.arraycopy(stateCount, 1, stateCount, 0, 6);
+        stateCount[6] = end - j;
+        runs++;
+        if (!black && runs >= 7 && foundPatternCross(stateCount)) {
+          handlePossibleCenter(stateCount, i, end);
+        }
+        black = !black;
+        j = end;
+      }
+    }
+
+    Collections.sort(candidates, new CountComparator());
+    int size = Math.min(candidates.size(), MAX_CANDIDATES);
+    Detector.Point[] result = new Detector.Point[size];
+    for (int k = 0; k < size; k++) {
+      Candidate candidate = candidates.get(k);
+      // Centers are measured from pixel edges, so truncating gives the pixel containing them
+      result[k] = new Detector.Point((int) candidate.x, (int) candidate.y);
+    }
+    return result;
+  }
+
+  /**
+   * Given a count of white/black/white/black/white/black/white pixels just seen and an end
+   * position, figures the location of the center of this run.
+   */
+  private static float centerFromEnd(int[] stateCount, int end) {
+    return (float) (end - stateCount[6] - stateCount[5] - stateCount[4]) - stateCount[3] / 2.0f;
+  }
+
+  /**
+   * @param stateCount count of white/black/white/black/white/black/white pixels just read
+   * @return true iff the proportions of the counts is close enough to the 1/1/1/1/1/1/1 ratios
+   *         of a bull's eye to be considered a match
+   */
+  private static boolean foundPatternCross(int[] stateCount) {
+    int totalModuleSize = 0;
+    for (int count : stateCount) {
+      if (count == 0) {
+        return false;
+      }
+      totalModuleSize += count;
+    }
+    if (totalModuleSize < 7) {
+      return false;
+    }
+    float moduleSize = totalModuleSize / 7.0f;
+    float maxVariance = moduleSize / 2.0f;
+    // Allow less than 50% variance from 1-1-1-1-1-1-1 proportions
+    for (int count : stateCount) {
+      if (Math.abs(moduleSize - count) >= maxVariance) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * After a horizontal scan finds a potential bull's eye, this method scans through its center
+   * along a column, a row or a diagonal to see if the same proportion is detected. Since the
+   * rings of a bull's eye are square, a diagonal crosses each ring in as many steps as a row does.
+   *
+   * @param startI row of a point within the center module of a possible bull's eye
+   * @param startJ column of that point
+   * @param di step between rows along the scanned line
+   * @param dj step between columns along the scanned line
+   * @param maxCount maximum reasonable number of pixels that should be
+   *  observed in any reading state, based on the results of the horizontal scan
+   * @param originalStateCountTotal the original state count total
+   * @return center of bull's eye along the scanned line, in steps from the start point,
+   *  or {@link Float#NaN} if not found
+   */
+  private float crossCheck(int startI, int startJ, int di, int dj, int maxCount,
+                           int originalStateCountTotal) {
+    int[] stateCount = crossCheckStateCount;
+    Arrays.fill(stateCount, 0);
+
+    // Count backwards from the center module, then forwards
+    int i = startI;
+    int j = startJ;
+    for (int state = 3; state >= 0; state--) {
+      boolean black = (state & 1) == 1;
+      while (isValid(i, j) && image.get(j, i) == black && stateCount[state] <= maxCount) {
+        stateCount[state]++;
+        i -= di;
+        j -= dj;
+      }
+      if (stateCount[state] > maxCount || (!isValid(i, j) && state > 0)) {
+        return Float.NaN;
+      }
+    }
+    i = startI + di;
+    j = startJ + dj;
+    int steps = 1;
+    for (int state = 3; state < 7; state++) {
+      boolean black = (state & 1) == 1;
+      while (isValid(i, j) && image.get(j, i) == black && stateCount[state] <= maxCount) {
+        stateCount[state]++;
+        i += di;
+        j += dj;
+        steps++;
+      }
+      if (stateCount[state] > maxCount || (!isValid(i, j) && state < 6)) {
+        return Float.NaN;
+      }
+    }
+
+    // If we found a bull's-eye-like section, but its size is more than 40% different than
+    // the original, assume it's a false positive
+    int stateCountTotal = 0;
+    for (int count : stateCount) {
+      stateCountTotal += count;
+    }
+    if (5 * Math.abs(stateCountTotal - originalStateCountTotal) >= 2 * originalStateCountTotal) {
+      return Float.NaN;
+    }
+
+    return foundPatternCross(stateCount) ? centerFromEnd(stateCount, steps) : Float.NaN;
+  }
+
+  private boolean isValid(int i, int j) {
+    return i >= 0 && i < image.getHeight() && j >= 0 && j < image.getWidth();
+  }
+
+  /**
+   * Called when a horizontal scan finds a possible bull's eye. It is cross checked with a
+   * vertical scan and, if successful, cross-cross-checked with another horizontal scan, which
+   * locates the real horizontal center, and then along both diagonals. The location is then
+   * added to the candidates, or counted as another sighting of a candidate found nearby before.
+   *
+   * @param stateCount reading state module counts from horizontal scan
+   * @param i row where the bull's eye may be found
+   * @param j end of possible bull's eye in row
+   */
+  private void handlePossibleCenter(int[] stateCount, int i, int j) {
+    int stateCountTotal = 0;
+    for (int count : stateCount) {
+      stateCountTotal += count;
+    }
+    int maxCount = 2 * stateCountTotal / 7 + 1;
+    int startJ = (int) centerFromEnd(stateCount, j);
+    float centerI = i + crossCheck(i, startJ, 1, 0, maxCount, stateCountTotal);
+    if (Float.isNaN(centerI)) {
+      return;
+    }
+    int startI = (int) centerI;
+    float centerJ = startJ + crossCheck(startI, startJ, 0, 1, maxCount, stateCountTotal);
+    if (Float.isNaN(centerJ) ||
+        Float.isNaN(crossCheck(startI, (int) centerJ, 1, 1, maxCount, stateCountTotal)) ||
+        Float.isNaN(crossCheck(startI, (int) centerJ, 1, -1, maxCount, stateCountTotal))) {
+      return;
+    }
+    float estimatedModuleSize = stateCountTotal / 7.0f;
+    for (Candidate candidate : candidates) {
+      if (candidate.aboutEquals(estimatedModuleSize, centerI, centerJ)) {
+        candidate.combineEstimate(centerI, centerJ, estimatedModuleSize);
+        return;
+      }
+    }
+    candidates.add(new Candidate(centerJ, centerI, estimatedModuleSize));
+  }
+
+  /**
+   * A possible bull's eye center, with the number of times it was found.
+   */
+  private static final class Candidate {
+
+    private float x;
+    private float y;
+    private float estimatedModuleSize;
+    private int count;
+
+    Candidate(float x, float y, float estimatedModuleSize) {
+      this.x = x;
+      this.y = y;
+      this.estimatedModuleSize = estimatedModuleSize;
+      this.count = 1;
+    }
+
+    /**
+     * Determines if this candidate is at nearly the same center with nearly the same size.
+     */
+    boolean aboutEquals(float moduleSize, float i, float j) {
+      if (Math.abs(i - y) <= moduleSize && Math.abs(j - x) <= moduleSize) {
+        float moduleSizeDiff = Math.abs(moduleSize - estimatedModuleSize);
+        return moduleSizeDiff <= 1.0f || moduleSizeDiff <= estimatedModuleSize;
+      }
+      return false;
+    }
+
+    /**
+     * Combines the current estimate of the center and module size with a new one, weighted by
+     * the number of times each was found.
+     */
+    void combineEstimate(float i, float j, float newModuleSize) {
+      int combinedCount = count + 1;
+      x = (count * x + j) / combinedCount;
+      y = (count * y + i) / combinedCount;
+      estimatedModuleSize = (count * estimatedModuleSize + newModuleSize) / combinedCount;
+      count = combinedCount;
+    }
+  }
+
+  /**
+   * Orders candidates by the number of times they were found, most often first.
+   */
+  private static final class CountComparator implements Comparator<Candidate>, Serializable {
+    @Override
+    public int compare(Candidate a, Candidate b) {
+      return b.count - a.count;
+    }
+  }
+
+}
@@ -37,7 +37,9 @@ import com.google.zxing.common.reedsolomon.ReedSolomonException;
 public final class Detector {
 
   private final BitMatrix image;
+  private final GridSampler sampler;
 
+  private Point[] centerCandidates;
   private boolean compact;
   private int nbLayers;
   private int nbDataBlocks;
@@ -45,7 +47,16 @@ public final class Detector {
   private int shift;
 
   public Detector(BitMatrix image) {
+    this(image, GridSampler.getInstance());
+  }
+
+  /**
+   * @param image image to search
+   * @param sampler samples the grid of modules once the code is found
+   */
+  public Detector(BitMatrix image, GridSampler sampler) {
     this.image = image;
+    this.sampler = sampler;
   }
 
   public AztecDetectorResult detect() throws NotFoundException {
@@ -61,8 +72,24 @@ public final class Detector {
    */
    public AztecDetectorResult detect(boolean isMirror) throws NotFoundException {
 
-    // 1. Get the center of the aztec matrix
-    Point pCenter = getMatrixCenter();
+    // 1. Try the most likely bull's eyes anywhere in the image, then the center of the image
+    if (centerCandidates == null) {
+      centerCandidates = new BullsEyeFinder(image).find();
+    }
+    for (Point pCenter : centerCandidates) {
+      try {
+        return detect(pCenter, isMirror);
+      } catch (NotFoundException ignored) {
+        // try the next candidate
+      }
+    }
+    return detect(getMatrixCenter(), isMirror);
+  }
+
+  /**
+   * Detects an Aztec Code whose bull's eye is centered on the given point.
+   */
+  private AztecDetectorResult detect(Point pCenter, boolean isMirror) throws NotFoundException {
 
     // 2. Get the center points of the four diagonal points just outside the bull's eye
     //  [topRight, bottomRight, bottomLeft, topLeft]
@@ -369,8 +396,7 @@ public final class Detector {
                                ResultPoint topRight,
                                ResultPoint bottomRight,
                                ResultPoint bottomLeft) throws NotFoundException {
-      
-    GridSampler sampler = GridSampler.getInstance();
+
     int dimension = getDimension();
 
     float low = dimension / 2.0f - nbCenterLayers;
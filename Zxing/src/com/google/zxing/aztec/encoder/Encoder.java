@@ -38,6 +38,12 @@ public final class Encoder {
     12, 12, 12, 12, 12, 12, 12, 12, 12, 12
   };
 
+  // The runs of symbol sizes, in increasing order, over which the word size stays the same:
+  // compact (1) or not (0), first and last number of layers
+  private static final int[][] LAYER_RUNS = {
+    {1, 1, 2}, {1, 3, 4}, {0, 4, 8}, {0, 9, 22}, {0, 23, 32}
+  };
+
   private Encoder() {
   }
 
@@ -91,36 +97,48 @@ public final class Encoder {
         throw new IllegalArgumentException("Data to large for user specified layer");
       }
     } else {
-      wordSize = 0;
-      stuffedBits = null;
       // We look at the possible table sizes in the order Compact1, Compact2, Compact3,
       // Compact4, Normal4,...  Normal(i) for i < 4 isn't typically used since Compact(i+1)
-      // is the same size, but has more data.
-      for (int i = 0; ; i++) {
-        if (i > MAX_NB_BITS) {
-          throw new IllegalArgumentException("Data too large for an Aztec code");
-        }
-        compact = i <= 3;
-        layers = compact ? i + 1 : i;
-        totalBitsInLayer = totalBitsInLayer(layers, compact);
-        if (totalSizeBits > totalBitsInLayer) {
+      // is the same size, but has more data. Within each run of sizes sharing a word size,
+      // the number of stuffed bits is fixed, so the smallest size that fits is solved for
+      // directly.
+      int[] stuffedSizes = new int[WORD_SIZE[MAX_NB_BITS] + 1];
+      layers = 0;
+      compact = false;
+      wordSize = 0;
+      for (int[] run : LAYER_RUNS) {
+        boolean runCompact = run[0] != 0;
+        int lastLayers = run[2];
+        wordSize = WORD_SIZE[run[1]];
+        if (minLayers(totalSizeBits, runCompact) > lastLayers) {
+          // Too small even before stuffing
           continue;
         }
-        // [Re]stuff the bits if this is the first opportunity, or if the
-        // wordSize has changed
-        if (wordSize != WORD_SIZE[layers]) {
-          wordSize = WORD_SIZE[layers];
-          stuffedBits = stuffBits(bits, wordSize);
+        if (stuffedSizes[wordSize] == 0) {
+          stuffedSizes[wordSize] = getStuffedSize(bits, wordSize);
         }
-        int usableBitsInLayers = totalBitsInLayer - (totalBitsInLayer % wordSize);
-        if (compact && stuffedBits.getSize() > wordSize * 64) {
+        int stuffedSize = stuffedSizes[wordSize];
+        if (runCompact && stuffedSize > wordSize * 64) {
           // Compact format only allows 64 data words, though C4 can hold more words than that
           continue;
         }
-        if (stuffedBits.getSize() + eccBits <= usableBitsInLayers) {
+        int runLayers = Math.max(run[1], minLayers(stuffedSize + eccBits, runCompact));
+        int total = totalBitsInLayer(runLayers, runCompact);
+        if (stuffedSize + eccBits > total - (total % wordSize)) {
+          // Only whole words are usable; one more layer always makes up for that
+          runLayers++;
+        }
+        if (runLayers <= lastLayers) {
+          layers = runLayers;
+          compact = runCompact;
           break;
         }
       }
+      if (layers == 0) {
+        throw new IllegalArgumentException("Data too large for an Aztec code");
+      }
+      totalBitsInLayer = totalBitsInLayer(layers, compact);
+      stuffedBits = stuffBits(bits, wordSize);
     }
     BitArray messageBits = generateCheckWords(stuffedBits, totalBitsInLayer, wordSize);
     
@@ -343,4 +361,43 @@ public final class Encoder {
   private static int totalBitsInLayer(int layers, boolean compact) {
     return ((compact ? 88 : 112) + 16 * layers) * layers;
   }
+
+  /**
+   * @return the fewest layers holding the given number of bits, solving
+   *  {@link #totalBitsInLayer(int, boolean)} for the number of layers
+   */
+  private static int minLayers(int bits, boolean compact) {
+    int base = compact ? 88 : 112;
+    int layers = (int) Math.ceil((Math.sqrt((double) base * base + 64.0 * bits) - base) / 32);
+    // Guard against rounding either way
+    while (layers > 1 && totalBitsInLayer(layers - 1, compact) >= bits) {
+      layers--;
+    }
+    while (totalBitsInLayer(layers, compact) < bits) {
+      layers++;
+    }
+    return Math.max(layers, 1);
+  }
+
+  /**
+   * @return the size {@link #stuffBits(BitArray, int)} would return, without building the result
+   */
+  static int getStuffedSize(BitArray bits, int wordSize) {
+    int size = 0;
+    int n = bits.getSize();
+    int mask = (1 << wordSize) - 2;
+    for (int i = 0; i < n; i += wordSize) {
+      int word = 0;
+      for (int j = 0; j < wordSize; j++) {
+        if (i + j >= n || bits.get(i + j)) {
+          word |= 1 << (wordSize - 1 - j);
+        }
+      }
+      if ((word & mask) == mask || (word & mask) == 0) {
+        i--;
+      }
+      size += wordSize;
+    }
+    return size;
+  }
 }
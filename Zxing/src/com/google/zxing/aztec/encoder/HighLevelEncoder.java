@@ -19,12 +19,6 @@ package com.google.zxing.aztec.encoder;
 import com.google.zxing.common.BitArray;
 
 import java.util.Arrays;
-import java.util.Collection;
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.List;
 
 /**
  * This produces nearly optimal encodings of text into the first-level of
@@ -148,7 +142,19 @@ public final class HighLevelEncoder {
     SHIFT_TABLE[MODE_DIGIT][MODE_UPPER] = 15;
   }
 
+  // The states kept after each character never number more than this: at most one without
+  // Binary Shift per mode, and for each mode Binary Shift can return to, at most ten with
+  // different byte counts, as any two of those differ by less than the 10 bits of a new shift.
+  // The tables grow if that should ever turn out to be wrong.
+  private static final int MAX_STATES = 40;
+
   private final byte[] text;
+  // The states for the characters read so far, and those for the next characters. Both tables
+  // also hold spare states past their counts, which are filled in rather than creating new ones.
+  private State[] states;
+  private int stateCount;
+  private State[] nextStates;
+  private int nextStateCount;
 
   public HighLevelEncoder(byte[] text) {
     this.text = text;
@@ -158,7 +164,10 @@ public final class HighLevelEncoder {
    * @return text represented by this encoder encoded as a {@link BitArray}
    */
   public BitArray encode() {
-    Collection<State> states = Collections.singletonList(State.INITIAL_STATE);
+    states = new State[MAX_STATES];
+    nextStates = new State[MAX_STATES];
+    states[0] = new State();
+    stateCount = 1;
     for (int index = 0; index < text.length; index++) {
       int pairCode;
       int nextChar = index + 1 < text.length ? text[index + 1] : 0;
@@ -178,130 +187,160 @@ public final class HighLevelEncoder {
         default:    
           pairCode = 0;
       }
+      nextStateCount = 0;
       if (pairCode > 0) {
         // We have one of the four special PUNCT pairs.  Treat them specially.
         // Get a new set of states for the two new characters.
-        states = updateStateListForPair(states, index, pairCode);
+        for (int i = 0; i < stateCount; i++) {
+          updateStateForPair(states[i], index, pairCode);
+        }
         index++;
       } else {
         // Get a new set of states for the new character.
-        states = updateStateListForChar(states, index);
+        for (int i = 0; i < stateCount; i++) {
+          updateStateForChar(states[i], index);
+        }
       }
+      State[] swap = states;
+      states = nextStates;
+      stateCount = nextStateCount;
+      nextStates = swap;
     }
     // We are left with a set of states.  Find the shortest one.
-    State minState = Collections.min(states, new Comparator<State>() {
-      @Override
-      public int compare(State a, State b) {
-        return a.getBitCount() - b.getBitCount();
+    State minState = states[0];
+    for (int i = 1; i < stateCount; i++) {
+      if (states[i].getBitCount() < minState.getBitCount()) {
+        minState = states[i];
       }
-    });
+    }
     // Convert it to a bit array, and return.
     return minState.toBitArray(text);
   }
 
-  // We update a set of states for a new character by updating each state
-  // for the new character, merging the results, and then removing the
-  // non-optimal states.
-  private Collection<State> updateStateListForChar(Iterable<State> states, int index) {
-    Collection<State> result = new LinkedList<>();
-    for (State state : states) {
-      updateStateForChar(state, index, result);
-    }
-    return simplifyStates(result);
-  }
-
-  // Return a set of states that represent the possible ways of updating this
-  // state for the next character.  The resulting set of states are added to
-  // the "result" list.
-  private void updateStateForChar(State state, int index, Collection<State> result) {
+  // Update the state for the new character, adding the resulting states to the next states.
+  // Each possible new state is first compared with the next states found so far by its mode,
+  // Binary Shift byte count and bit count alone, so that no token is created for it unless
+  // it is kept.
+  private void updateStateForChar(State state, int index) {
     char ch = (char) (text[index] & 0xFF);
     boolean charInCurrentTable = CHAR_MAP[state.getMode()][ch] > 0;
-    State stateNoBinary = null;
+    Token tokenNoBinary = null;
     for (int mode = 0; mode <= MODE_PUNCT; mode++) {
       int charInMode = CHAR_MAP[mode][ch];
       if (charInMode > 0) {
-        if (stateNoBinary == null) {
-          // Only create stateNoBinary the first time it's required.
-          stateNoBinary = state.endBinaryShift(index);
-        }
         // Try generating the character by latching to its mode
-        if (!charInCurrentTable || mode == state.getMode() || mode == MODE_DIGIT) {
+        if ((!charInCurrentTable || mode == state.getMode() || mode == MODE_DIGIT) &&
+            isWorthAdding(mode, 0, state.getLatchAndAppendBitCount(mode))) {
           // If the character is in the current table, we don't want to latch to
           // any other mode except possibly digit (which uses only 4 bits).  Any
           // other latch would be equally successful *after* this character, and
           // so wouldn't save any bits.
-          State latchState = stateNoBinary.latchAndAppend(mode, charInMode);
-          result.add(latchState);
+          if (tokenNoBinary == null) {
+            // Only create tokenNoBinary the first time it's required.
+            tokenNoBinary = state.getTokenEndingBinaryShift(index);
+          }
+          state.latchAndAppend(tokenNoBinary, mode, charInMode, getSpareState());
+          addSpareState();
         }
         // Try generating the character by switching to its mode.
-        if (!charInCurrentTable && SHIFT_TABLE[state.getMode()][mode] >= 0) {
+        if (!charInCurrentTable && SHIFT_TABLE[state.getMode()][mode] >= 0 &&
+            isWorthAdding(state.getMode(), 0, state.getShiftAndAppendBitCount())) {
           // It never makes sense to temporarily shift to another mode if the
           // character exists in the current mode.  That can never save bits.
-          State shiftState = stateNoBinary.shiftAndAppend(mode, charInMode);
-          result.add(shiftState);
+          if (tokenNoBinary == null) {
+            tokenNoBinary = state.getTokenEndingBinaryShift(index);
+          }
+          state.shiftAndAppend(tokenNoBinary, mode, charInMode, getSpareState());
+          addSpareState();
         }
       }
     }
-    if (state.getBinaryShiftByteCount() > 0 || CHAR_MAP[state.getMode()][ch] == 0) {
+    if ((state.getBinaryShiftByteCount() > 0 || CHAR_MAP[state.getMode()][ch] == 0) &&
+        isWorthAdding(state.getBinaryShiftCharMode(),
+                      state.getBinaryShiftCharByteCount(),
+                      state.getBinaryShiftCharBitCount())) {
       // It's never worthwhile to go into binary shift mode if you're not already
       // in binary shift mode, and the character exists in your current mode.
       // That can never save bits over just outputting the char in the current mode.
-      State binaryState = state.addBinaryShiftChar(index);
-      result.add(binaryState);
-    }
-  }
-
-  private static Collection<State> updateStateListForPair(Iterable<State> states, int index, int pairCode) {
-    Collection<State> result = new LinkedList<>();
-    for (State state : states) {
-      updateStateForPair(state, index, pairCode, result);
+      state.addBinaryShiftChar(index, getSpareState());
+      addSpareState();
     }
-    return simplifyStates(result);
   }
 
-  private static void updateStateForPair(State state, int index, int pairCode, Collection<State> result) {
-    State stateNoBinary = state.endBinaryShift(index);
+  private void updateStateForPair(State state, int index, int pairCode) {
+    Token tokenNoBinary = state.getTokenEndingBinaryShift(index);
     // Possibility 1.  Latch to MODE_PUNCT, and then append this code
-    result.add(stateNoBinary.latchAndAppend(MODE_PUNCT, pairCode));
+    state.latchAndAppend(tokenNoBinary, MODE_PUNCT, pairCode, getSpareState());
+    addSpareStateIfWorthAdding();
     if (state.getMode() != MODE_PUNCT) {
       // Possibility 2.  Shift to MODE_PUNCT, and then append this code.
       // Every state except MODE_PUNCT (handled above) can shift
-      result.add(stateNoBinary.shiftAndAppend(MODE_PUNCT, pairCode));
+      state.shiftAndAppend(tokenNoBinary, MODE_PUNCT, pairCode, getSpareState());
+      addSpareStateIfWorthAdding();
     }
     if (pairCode == 3 || pairCode == 4) {
       // both characters are in DIGITS.  Sometimes better to just add two digits
-      State digitState = stateNoBinary
-          .latchAndAppend(MODE_DIGIT, 16 - pairCode)  // period or comma in DIGIT
-          .latchAndAppend(MODE_DIGIT, 1);             // space in DIGIT
-      result.add(digitState);
+      State digitState = getSpareState();
+      state.latchAndAppend(tokenNoBinary, MODE_DIGIT, 16 - pairCode, digitState);  // period or comma in DIGIT
+      digitState.latchAndAppend(digitState.getToken(), MODE_DIGIT, 1, digitState); // space in DIGIT
+      addSpareStateIfWorthAdding();
     }
     if (state.getBinaryShiftByteCount() > 0) {
       // It only makes sense to do the characters as binary if we're already
       // in binary mode.
-      State binaryState = state.addBinaryShiftChar(index).addBinaryShiftChar(index + 1);
-      result.add(binaryState);
+      State binaryState = getSpareState();
+      state.addBinaryShiftChar(index, binaryState);
+      binaryState.addBinaryShiftChar(index + 1, binaryState);
+      addSpareStateIfWorthAdding();
     }
   }
 
-  private static Collection<State> simplifyStates(Iterable<State> states) {
-    List<State> result = new LinkedList<>();
-    for (State newState : states) {
-      boolean add = true;
-      for (Iterator<State> iterator = result.iterator(); iterator.hasNext();) {
-        State oldState = iterator.next();
-        if (oldState.isBetterThanOrEqualTo(newState)) {
-          add = false;
-          break;
-        }
-        if (newState.isBetterThanOrEqualTo(oldState)) {
-          iterator.remove();
-        }
+  // Returns false if one of the next states is better (or equal) to be in than
+  // a state with the given mode, Binary Shift byte count and bit count.
+  private boolean isWorthAdding(int mode, int binaryShiftByteCount, int bitCount) {
+    for (int i = 0; i < nextStateCount; i++) {
+      if (nextStates[i].isBetterThanOrEqualTo(mode, binaryShiftByteCount, bitCount)) {
+        return false;
       }
-      if (add) {
-        result.add(newState);
+    }
+    return true;
+  }
+
+  // Returns the spare state to fill in with the next new state.
+  private State getSpareState() {
+    if (nextStateCount == nextStates.length) {
+      nextStates = Arrays.copyOf(nextStates, 2 * nextStateCount);
+    }
+    State state = nextStates[nextStateCount];
+    if (state == null) {
+      state = new State();
+      nextStates[nextStateCount] = state;
+    }
+    return state;
+  }
+
+  private void addSpareStateIfWorthAdding() {
+    State state = nextStates[nextStateCount];
+    if (isWorthAdding(state.getMode(), state.getBinaryShiftByteCount(), state.getBitCount())) {
+      addSpareState();
+    }
+  }
+
+  // Add the spare state, once filled in, to the next states, and remove those
+  // of them that it is better (or equal) to be in, keeping them as spares.
+  private void addSpareState() {
+    State state = nextStates[nextStateCount];
+    int count = 0;
+    for (int i = 0; i < nextStateCount; i++) {
+      State oldState = nextStates[i];
+      if (!state.isBetterThanOrEqualTo(oldState)) {
+        nextStates[i] = nextStates[count];
+        nextStates[count++] = oldState;
       }
     }
-    return result;
+    nextStates[nextStateCount] = nextStates[count];
+    nextStates[count] = state;
+    nextStateCount = count + 1;
   }
 
 }
@@ -20,14 +20,15 @@ import com.google.zxing.common.BitArray;
 
 final class SimpleToken extends Token {
   
-  // For normal words, indicates value and bitCount
-  private final short value;
-  private final short bitCount;
+  // For normal words, indicates value and bitCount. A latch or shift and the
+  // code following it can make up a single word of up to 19 bits.
+  private final int value;
+  private final int bitCount;
 
   SimpleToken(Token previous, int value, int bitCount)  {
     super(previous);
-    this.value = (short) value;
-    this.bitCount = (short) bitCount;
+    this.value = value;
+    this.bitCount = bitCount;
   }
 
   @Override
@@ -23,25 +23,35 @@ import com.google.zxing.common.BitArray;
 
 /**
  * State represents all information about a sequence necessary to generate the current output.
- * Note that a state is immutable.
+ * States are reused from one character to the next, so each transition below fills in a given
+ * result state rather than creating one. The result may be this state itself.
  */
 final class State {
-  
-  static final State INITIAL_STATE = new State(Token.EMPTY, HighLevelEncoder.MODE_UPPER, 0, 0);
+
+  // The longest run of bytes a single Binary Shift can output
+  private static final int MAX_BINARY_SHIFT_BYTE_COUNT = 2047 + 31;
 
   // The current mode of the encoding (or the mode to which we'll return if
   // we're in Binary Shift mode.
-  private final int mode;
+  private int mode;
   // The list of tokens that we output.  If we are in Binary Shift mode, this
   // token list does *not* yet included the token for those bytes
-  private final Token token;
+  private Token token;
   // If non-zero, the number of most recent bytes that should be output
   // in Binary Shift mode.
-  private final int binaryShiftByteCount;
+  private int binaryShiftByteCount;
   // The total number of bits generated (including Binary Shift).
-  private final int bitCount;
+  private int bitCount;
+
+  State() {
+    this(Token.EMPTY, HighLevelEncoder.MODE_UPPER, 0, 0);
+  }
 
   private State(Token token, int mode, int binaryBytes, int bitCount) {
+    set(token, mode, binaryBytes, bitCount);
+  }
+
+  private void set(Token token, int mode, int binaryBytes, int bitCount) {
     this.token = token;
     this.mode = mode;
     this.binaryShiftByteCount = binaryBytes;
@@ -70,86 +80,118 @@ final class State {
     return bitCount;
   }
 
-  // Create a new state representing this state with a latch to a (not
-  // necessary different) mode, and then a code.
-  State latchAndAppend(int mode, int value) {
-    //assert binaryShiftByteCount == 0;
-    int bitCount = this.bitCount;
-    Token token = this.token;
+  // Make the result this state with a latch to a (not necessary different)
+  // mode, and then a code. The token given is that of this state once out of
+  // Binary Shift mode.
+  void latchAndAppend(Token token, int mode, int value, State result) {
+    int latchModeBitCount = mode == HighLevelEncoder.MODE_DIGIT ? 4 : 5;
     if (mode != this.mode) {
+      // The latch and the code go into a single token
       int latch = HighLevelEncoder.LATCH_TABLE[this.mode][mode];
-      token = token.add(latch & 0xFFFF, latch >> 16);
-      bitCount += latch >> 16;
+      token = token.add(((latch & 0xFFFF) << latchModeBitCount) | value, (latch >> 16) + latchModeBitCount);
+    } else {
+      token = token.add(value, latchModeBitCount);
     }
-    int latchModeBitCount = mode == HighLevelEncoder.MODE_DIGIT ? 4 : 5;
-    token = token.add(value, latchModeBitCount);
-    return new State(token, mode, 0, bitCount + latchModeBitCount);
+    result.set(token, mode, 0, getLatchAndAppendBitCount(mode));
   }
 
-  // Create a new state representing this state, with a temporary shift
-  // to a different mode to output a single value.
-  State shiftAndAppend(int mode, int value) {
-    //assert binaryShiftByteCount == 0 && this.mode != mode;
-    Token token = this.token;
+  // The bit count of the state latchAndAppend() would make
+  int getLatchAndAppendBitCount(int mode) {
+    int bitCount = this.bitCount;
+    if (mode != this.mode) {
+      bitCount += HighLevelEncoder.LATCH_TABLE[this.mode][mode] >> 16;
+    }
+    return bitCount + (mode == HighLevelEncoder.MODE_DIGIT ? 4 : 5);
+  }
+
+  // Make the result this state, with a temporary shift to a different mode
+  // to output a single value. The token given is that of this state once out
+  // of Binary Shift mode.
+  void shiftAndAppend(Token token, int mode, int value, State result) {
+    //assert this.mode != mode;
     int thisModeBitCount = this.mode == HighLevelEncoder.MODE_DIGIT ? 4 : 5;
     // Shifts exist only to UPPER and PUNCT, both with tokens size 5.
-    token = token.add(HighLevelEncoder.SHIFT_TABLE[this.mode][mode], thisModeBitCount);
-    token = token.add(value, 5);
-    return new State(token, this.mode, 0, this.bitCount + thisModeBitCount + 5);
+    token = token.add((HighLevelEncoder.SHIFT_TABLE[this.mode][mode] << 5) | value, thisModeBitCount + 5);
+    result.set(token, this.mode, 0, getShiftAndAppendBitCount());
+  }
+
+  // The bit count of the state shiftAndAppend() would make
+  int getShiftAndAppendBitCount() {
+    return this.bitCount + (this.mode == HighLevelEncoder.MODE_DIGIT ? 4 : 5) + 5;
   }
 
-  // Create a new state representing this state, but an additional character
-  // output in Binary Shift mode.
-  State addBinaryShiftChar(int index) {
+  // Make the result this state, but with an additional character output in
+  // Binary Shift mode.
+  void addBinaryShiftChar(int index, State result) {
     Token token = this.token;
-    int mode = this.mode;
-    int bitCount = this.bitCount;
     if (this.mode == HighLevelEncoder.MODE_PUNCT || this.mode == HighLevelEncoder.MODE_DIGIT)  {
       //assert binaryShiftByteCount == 0;
       int latch = HighLevelEncoder.LATCH_TABLE[mode][HighLevelEncoder.MODE_UPPER];
       token = token.add(latch & 0xFFFF, latch >> 16);
-      bitCount += latch >> 16;
-      mode = HighLevelEncoder.MODE_UPPER;
+    }
+    int binaryShiftByteCount = this.binaryShiftByteCount + 1;
+    if (binaryShiftByteCount == MAX_BINARY_SHIFT_BYTE_COUNT) {
+      // The string is as long as it's allowed to be.  We should end it.
+      token = token.addBinaryShift(index + 1 - binaryShiftByteCount, binaryShiftByteCount);
+      binaryShiftByteCount = 0;
+    }
+    result.set(token, getBinaryShiftCharMode(), binaryShiftByteCount, getBinaryShiftCharBitCount());
+  }
+
+  // The mode of the state addBinaryShiftChar() would make
+  int getBinaryShiftCharMode() {
+    return mode == HighLevelEncoder.MODE_PUNCT || mode == HighLevelEncoder.MODE_DIGIT ?
+        HighLevelEncoder.MODE_UPPER : mode;
+  }
+
+  // The Binary Shift byte count of the state addBinaryShiftChar() would make
+  int getBinaryShiftCharByteCount() {
+    return binaryShiftByteCount + 1 == MAX_BINARY_SHIFT_BYTE_COUNT ? 0 : binaryShiftByteCount + 1;
+  }
+
+  // The bit count of the state addBinaryShiftChar() would make
+  int getBinaryShiftCharBitCount() {
+    int bitCount = this.bitCount;
+    if (mode == HighLevelEncoder.MODE_PUNCT || mode == HighLevelEncoder.MODE_DIGIT) {
+      bitCount += HighLevelEncoder.LATCH_TABLE[mode][HighLevelEncoder.MODE_UPPER] >> 16;
     }
     int deltaBitCount =
       (binaryShiftByteCount == 0 || binaryShiftByteCount == 31) ? 18 :
       (binaryShiftByteCount == 62) ? 9 : 8;
-    State result = new State(token, mode, binaryShiftByteCount + 1, bitCount + deltaBitCount);
-    if (result.binaryShiftByteCount == 2047 + 31) {
-      // The string is as long as it's allowed to be.  We should end it.
-      result = result.endBinaryShift(index + 1);
-    }
-    return result;
+    return bitCount + deltaBitCount;
   }
 
-  // Create the state identical to this one, but we are no longer in
-  // Binary Shift mode.
-  State endBinaryShift(int index) {
+  // The token of this state once we are no longer in Binary Shift mode.
+  Token getTokenEndingBinaryShift(int index) {
     if (binaryShiftByteCount == 0) {
-      return this;
+      return token;
     }
-    Token token = this.token;
-    token = token.addBinaryShift(index - binaryShiftByteCount, binaryShiftByteCount);
     //assert token.getTotalBitCount() == this.bitCount;
-    return new State(token, mode, 0, this.bitCount);
+    return token.addBinaryShift(index - binaryShiftByteCount, binaryShiftByteCount);
   }
 
   // Returns true if "this" state is better (or equal) to be in than "that"
   // state under all possible circumstances.
   boolean isBetterThanOrEqualTo(State other) {
-    int mySize = this.bitCount + (HighLevelEncoder.LATCH_TABLE[this.mode][other.mode] >> 16);
-    if (other.binaryShiftByteCount > 0 &&
-        (this.binaryShiftByteCount == 0 || this.binaryShiftByteCount > other.binaryShiftByteCount)) {
+    return isBetterThanOrEqualTo(other.mode, other.binaryShiftByteCount, other.bitCount);
+  }
+
+  // Returns true if "this" state is better (or equal) to be in than a state
+  // with the given mode, Binary Shift byte count and bit count.
+  boolean isBetterThanOrEqualTo(int otherMode, int otherBinaryShiftByteCount, int otherBitCount) {
+    int mySize = this.bitCount + (HighLevelEncoder.LATCH_TABLE[this.mode][otherMode] >> 16);
+    if (otherBinaryShiftByteCount > 0 &&
+        (this.binaryShiftByteCount == 0 || this.binaryShiftByteCount > otherBinaryShiftByteCount)) {
       mySize += 10;     // Cost of entering Binary Shift mode.
     }
-    return mySize <= other.bitCount;
+    return mySize <= otherBitCount;
   }
 
   BitArray toBitArray(byte[] text) {
     // Reverse the tokens, so that they are in the order that they should
     // be output
     Deque<Token> symbols = new LinkedList<>();
-    for (Token token = endBinaryShift(text.length).token; token != null; token = token.getPrevious()) {
+    for (Token token = getTokenEndingBinaryShift(text.length); token != null; token = token.getPrevious()) {
       symbols.addFirst(token);
     }
     BitArray bitArray = new BitArray();
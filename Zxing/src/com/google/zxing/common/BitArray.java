@@ -16,8 +16,6 @@
 
 package com.google.zxing.common;
 
-import java.util.Arrays;
-
 /**
  * <p>A simple, fast array of bits, represented compactly by an array of ints internally.</p>
  *
@@ -54,7 +52,8 @@ public final class BitArray implements Cloneable {
 
   private void ensureCapacity(int size) {
     if (size > bits.length * 32) {
-      int[] newBits = makeArray(size);
+      // Grow geometrically, so that appending bits one by one takes amortized constant time
+      int[] newBits = makeArray(Math.max(size, bits.length * 64));
       System.arraycopy(bits, 0, newBits, 0, bits.length);
       this.bits = newBits;
     }
@@ -163,15 +162,8 @@ public final class BitArray implements Cloneable {
     for (int i = firstInt; i <= lastInt; i++) {
       int firstBit = i > firstInt ? 0 : start & 0x1F;
       int lastBit = i < lastInt ? 31 : end & 0x1F;
-      int mask;
-      if (firstBit == 0 && lastBit == 31) {
-        mask = -1;
-      } else {
-        mask = 0;
-        for (int j = firstBit; j <= lastBit; j++) {
-          mask |= 1 << j;
-        }
-      }
+      // Ones from firstBit to lastBit; 2 << 31 overflows to 0, which still gives the right mask
+      int mask = (2 << lastBit) - (1 << firstBit);
       bits[i] |= mask;
     }
   }
@@ -262,10 +254,11 @@ public final class BitArray implements Cloneable {
   }
 
   public void xor(BitArray other) {
-    if (bits.length != other.bits.length) {
+    int words = (size + 31) / 32;
+    if (words != (other.size + 31) / 32) {
       throw new IllegalArgumentException("Sizes don't match");
     }
-    for (int i = 0; i < bits.length; i++) {
+    for (int i = 0; i < words; i++) {
       // The last byte could be incomplete (i.e. not have 8 bits in
       // it) but there is no problem since 0 XOR 0 == 0.
       bits[i] ^= other.bits[i];
@@ -347,12 +340,25 @@ public final class BitArray implements Cloneable {
       return false;
     }
     BitArray other = (BitArray) o;
-    return size == other.size && Arrays.equals(bits, other.bits);
+    if (size != other.size) {
+      return false;
+    }
+    // The arrays may have different spare capacity beyond size
+    for (int i = 0, words = (size + 31) / 32; i < words; i++) {
+      if (bits[i] != other.bits[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   @Override
   public int hashCode() {
-    return 31 * size + Arrays.hashCode(bits);
+    int result = 1;
+    for (int i = 0, words = (size + 31) / 32; i < words; i++) {
+      result = 31 * result + bits[i];
+    }
+    return 31 * size + result;
   }
 
   @Override
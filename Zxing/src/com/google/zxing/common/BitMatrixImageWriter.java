@@ -0,0 +1,223 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * <p>Writes a {@link BitMatrix} to a stream as a black and white PNG, PBM or BMP image, one pixel
+ * per bit, without platform image classes such as {@code android.graphics.Bitmap} or
+ * {@code java.awt.image.BufferedImage}.</p>
+ *
+ * <p>Rows are written one at a time as they are read from the matrix, so no more than a row of
+ * pixels is ever held in memory; PNG rows are compressed by a single {@link Deflater} as they are
+ * written. Set bits are black. The stream is not closed.</p>
+ */
+public final class BitMatrixImageWriter {
+
+  private static final byte[] PNG_SIGNATURE = {
+      (byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n',
+  };
+  private static final byte[] IHDR = {'I', 'H', 'D', 'R'};
+  private static final byte[] IDAT = {'I', 'D', 'A', 'T'};
+  private static final byte[] IEND = {'I', 'E', 'N', 'D'};
+  // Size of the IDAT chunks compressed rows are written in
+  private static final int IDAT_SIZE = 8192;
+
+  private static final int BMP_HEADER_SIZE = 14 + 40 + 8;
+
+  private BitMatrixImageWriter() {
+  }
+
+  /**
+   * @param matrix {@link BitMatrix} to write
+   * @param format "png", "pbm" or "bmp", in any case
+   * @param stream {@link OutputStream} to write the image to
+   * @throws IOException if writes to the stream fail
+   * @throws IllegalArgumentException if the format is not one of those supported
+   */
+  public static void writeToStream(BitMatrix matrix, String format, OutputStream stream)
+      throws IOException {
+    if ("png".equalsIgnoreCase(format)) {
+      writePNG(matrix, stream);
+    } else if ("pbm".equalsIgnoreCase(format)) {
+      writePBM(matrix, stream);
+    } else if ("bmp".equalsIgnoreCase(format)) {
+      writeBMP(matrix, stream);
+    } else {
+      throw new IllegalArgumentException("Unsupported image format: " + format);
+    }
+  }
+
+  /**
+   * Writes a PNG of bit depth 1, grayscale, in which 0 is black.
+   */
+  private static void writePNG(BitMatrix matrix, OutputStream stream) throws IOException {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    stream.write(PNG_SIGNATURE);
+
+    byte[] header = new byte[13];
+    putIntBigEndian(width, header, 0);
+    putIntBigEndian(height, header, 4);
+    header[8] = 1; // bit depth
+    // Color type 0 (grayscale), compression 0, filter 0, no interlacing
+    CRC32 crc = new CRC32();
+    writeChunk(IHDR, header, header.length, crc, stream);
+
+    // Each row starts with filter type 0, none; filters gain nothing on one bit pixels
+    byte[] scanline = new byte[1 + (width + 7) / 8];
+    byte[] chunk = new byte[IDAT_SIZE];
+    int chunkLength = 0;
+    BitArray row = null;
+    Deflater deflater = new Deflater();
+    try {
+      for (int y = 0; y <= height; y++) {
+        if (y < height) {
+          row = matrix.getRow(y, row);
+          packRow(row, width, true, scanline, 1);
+          deflater.setInput(scanline);
+        } else {
+          deflater.finish();
+        }
+        while (y < height ? !deflater.needsInput() : !deflater.finished()) {
+          chunkLength += deflater.deflate(chunk, chunkLength, chunk.length - chunkLength);
+          if (chunkLength == chunk.length) {
+            writeChunk(IDAT, chunk, chunkLength, crc, stream);
+            chunkLength = 0;
+          }
+        }
+      }
+    } finally {
+      deflater.end();
+    }
+    if (chunkLength > 0) {
+      writeChunk(IDAT, chunk, chunkLength, crc, stream);
+    }
+    writeChunk(IEND, chunk, 0, crc, stream);
+  }
+
+  private static void writeChunk(byte[] type,
+                                 byte[] data,
+                                 int length,
+                                 CRC32 crc,
+                                 OutputStream stream) throws IOException {
+    byte[] word = new byte[4];
+    putIntBigEndian(length, word, 0);
+    stream.write(word);
+    stream.write(type);
+    stream.write(data, 0, length);
+    crc.reset();
+    crc.update(type);
+    crc.update(data, 0, length);
+    putIntBigEndian((int) crc.getValue(), word, 0);
+    stream.write(word);
+  }
+
+  /**
+   * Writes a binary ("P4") PBM, in which 1 is black.
+   */
+  private static void writePBM(BitMatrix matrix, OutputStream stream) throws IOException {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    stream.write(("P4\n" + width + ' ' + height + '\n').getBytes("US-ASCII"));
+    byte[] packed = new byte[(width + 7) / 8];
+    BitArray row = null;
+    for (int y = 0; y < height; y++) {
+      row = matrix.getRow(y, row);
+      packRow(row, width, false, packed, 0);
+      stream.write(packed);
+    }
+  }
+
+  /**
+   * Writes a BMP of one bit per pixel, whose palette makes 1 black. Rows are written bottom to
+   * top, as BMP stores them.
+   */
+  private static void writeBMP(BitMatrix matrix, OutputStream stream) throws IOException {
+    int width = matrix.getWidth();
+    int height = matrix.getHeight();
+    // Rows are padded to a multiple of 4 bytes
+    int rowBytes = ((width + 31) / 32) * 4;
+
+    byte[] header = new byte[BMP_HEADER_SIZE];
+    // File header
+    header[0] = 'B';
+    header[1] = 'M';
+    putIntLittleEndian(BMP_HEADER_SIZE + rowBytes * height, header, 2);
+    putIntLittleEndian(BMP_HEADER_SIZE, header, 10);
+    // Info header
+    putIntLittleEndian(40, header, 14);
+    putIntLittleEndian(width, header, 18);
+    putIntLittleEndian(height, header, 22);
+    header[26] = 1; // planes
+    header[28] = 1; // bits per pixel
+    // No compression; image size may be 0 when uncompressed, and resolution is left unspecified
+    putIntLittleEndian(2, header, 46); // colors used
+    // Palette: white, then black, as blue, green, red and a reserved byte
+    header[54] = (byte) 0xFF;
+    header[55] = (byte) 0xFF;
+    header[56] = (byte) 0xFF;
+    stream.write(header);
+
+    byte[] packed = new byte[rowBytes];
+    BitArray row = null;
+    for (int y = height - 1; y >= 0; y--) {
+      row = matrix.getRow(y, row);
+      packRow(row, width, false, packed, 0);
+      stream.write(packed);
+    }
+  }
+
+  /**
+   * Packs a row eight pixels to a byte, leftmost pixel in the most significant bit, as all three
+   * formats store it. Bits past the width are 0, or 1 if inverted.
+   */
+  private static void packRow(BitArray row, int width, boolean invert, byte[] packed, int offset) {
+    int[] bits = row.getBitArray();
+    int numBytes = (width + 7) / 8;
+    for (int i = 0; i < numBytes; i += 4) {
+      // BitArray stores the leftmost pixel in the least significant bit
+      int word = Integer.reverse(bits[i / 4]);
+      if (invert) {
+        word = ~word;
+      }
+      int end = Math.min(4, numBytes - i);
+      for (int j = 0; j < end; j++) {
+        packed[offset + i + j] = (byte) (word >>> (24 - 8 * j));
+      }
+    }
+  }
+
+  private static void putIntBigEndian(int value, byte[] bytes, int offset) {
+    bytes[offset] = (byte) (value >>> 24);
+    bytes[offset + 1] = (byte) (value >>> 16);
+    bytes[offset + 2] = (byte) (value >>> 8);
+    bytes[offset + 3] = (byte) value;
+  }
+
+  private static void putIntLittleEndian(int value, byte[] bytes, int offset) {
+    bytes[offset] = (byte) value;
+    bytes[offset + 1] = (byte) (value >>> 8);
+    bytes[offset + 2] = (byte) (value >>> 16);
+    bytes[offset + 3] = (byte) (value >>> 24);
+  }
+
+}
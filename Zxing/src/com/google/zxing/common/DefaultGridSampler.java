@@ -19,6 +19,9 @@ package com.google.zxing.common;
 import com.google.zxing.NotFoundException;
 
 /**
+ * <p>Samples grids with plain Java code. It keeps no state between calls, so one instance may be
+ * shared by any number of threads.</p>
+ *
  * @author Sean Owen
  */
 public final class DefaultGridSampler extends GridSampler {
@@ -51,36 +54,63 @@ public final class DefaultGridSampler extends GridSampler {
     if (dimensionX <= 0 || dimensionY <= 0) {
       throw NotFoundException.getNotFoundInstance();      
     }
+    int width = image.getWidth();
+    int height = image.getHeight();
     BitMatrix bits = new BitMatrix(dimensionX, dimensionY);
-    float[] points = new float[2 * dimensionX];
+    BitArray row = new BitArray(dimensionX);
+    int[] rowWords = row.getBitArray();
+    // Sample points are at the centers of modules: (x + 0.5, y + 0.5). Along a row, the
+    // numerators and denominator of the transform all change by a constant for each step in x,
+    // so they're just accumulated. Doubles keep the accumulated error well below a pixel.
+    double xStep = transform.a11;
+    double yStep = transform.a12;
+    double denominatorStep = transform.a13;
     for (int y = 0; y < dimensionY; y++) {
-      int max = points.length;
-      float iValue = (float) y + 0.5f;
-      for (int x = 0; x < max; x += 2) {
-        points[x] = (float) (x / 2) + 0.5f;
-        points[x + 1] = iValue;
-      }
-      transform.transformPoints(points);
-      // Quick check to see if points transformed to something inside the image;
-      // sufficient to check the endpoints
-      checkAndNudgePoints(image, points);
-      try {
-        for (int x = 0; x < max; x += 2) {
-          if (image.get((int) points[x], (int) points[x + 1])) {
-            // Black(-ish) pixel
-            bits.set(x / 2, y);
+      double iValue = y + 0.5;
+      double xNumerator = transform.a11 * 0.5 + transform.a21 * iValue + transform.a31;
+      double yNumerator = transform.a12 * 0.5 + transform.a22 * iValue + transform.a32;
+      double denominator = transform.a13 * 0.5 + transform.a23 * iValue + transform.a33;
+      int word = 0;
+      for (int x = 0; x < dimensionX; x++) {
+        double scale = 1.0 / denominator;
+        int imageX = (int) (float) (xNumerator * scale);
+        int imageY = (int) (float) (yNumerator * scale);
+        // Points just off the image, as happens when the code runs right to its edge, are
+        // nudged back onto it; anything further means the transform is wrong
+        if (imageX < 0 || imageX >= width) {
+          if (imageX == -1) {
+            imageX = 0;
+          } else if (imageX == width) {
+            imageX = width - 1;
+          } else {
+            throw NotFoundException.getNotFoundInstance();
+          }
+        }
+        if (imageY < 0 || imageY >= height) {
+          if (imageY == -1) {
+            imageY = 0;
+          } else if (imageY == height) {
+            imageY = height - 1;
+          } else {
+            throw NotFoundException.getNotFoundInstance();
           }
         }
-      } catch (ArrayIndexOutOfBoundsException aioobe) {
-        // This feels wrong, but, sometimes if the finder patterns are misidentified, the resulting
-        // transform gets "twisted" such that it maps a straight line of points to a set of points
-        // whose endpoints are in bounds, but others are not. There is probably some mathematical
-        // way to detect this about the transformation that I don't know yet.
-        // This results in an ugly runtime exception despite our clever checks above -- can't have
-        // that. We could check each point's coordinates but that feels duplicative. We settle for
-        // catching and wrapping ArrayIndexOutOfBoundsException.
-        throw NotFoundException.getNotFoundInstance();
+        if (image.get(imageX, imageY)) {
+          // Black(-ish) pixel
+          word |= 1 << (x & 0x1F);
+        }
+        if ((x & 0x1F) == 0x1F) {
+          rowWords[x >> 5] = word;
+          word = 0;
+        }
+        xNumerator += xStep;
+        yNumerator += yStep;
+        denominator += denominatorStep;
+      }
+      if ((dimensionX & 0x1F) != 0) {
+        rowWords[dimensionX >> 5] = word;
       }
+      bits.setRow(y, row);
     }
     return bits;
   }
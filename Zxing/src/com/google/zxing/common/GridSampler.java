@@ -16,8 +16,11 @@
 
 package com.google.zxing.common;
 
+import com.google.zxing.DecodeHintType;
 import com.google.zxing.NotFoundException;
 
+import java.util.Map;
+
 /**
  * Implementations of this class can, given locations of finder patterns for a QR code in an
  * image, sample the right points in the image to reconstruct the QR code, accounting for
@@ -55,6 +58,15 @@ public abstract class GridSampler {
     return gridSampler;
   }
 
+  /**
+   * @param hints decode hints, possibly specifying {@link DecodeHintType#GRID_SAMPLER}
+   * @return the GridSampler given in the hints, or else the current global implementation
+   */
+  public static GridSampler getInstance(Map<DecodeHintType,?> hints) {
+    GridSampler sampler = hints == null ? null : (GridSampler) hints.get(DecodeHintType.GRID_SAMPLER);
+    return sampler == null ? gridSampler : sampler;
+  }
+
   /**
    * Samples an image for a rectangular matrix of bits of the given dimension. The sampling
    * transformation is determined by the coordinates of 4 points, in the original and transformed
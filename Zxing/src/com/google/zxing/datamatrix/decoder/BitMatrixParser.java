@@ -19,14 +19,27 @@ package com.google.zxing.datamatrix.decoder;
 import com.google.zxing.FormatException;
 import com.google.zxing.common.BitMatrix;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * @author bbrown@google.com (Brian Brown)
  */
 final class BitMatrixParser {
 
+  /**
+   * For each {@link Version}, by version number - 1, the (row, column) in the mapping matrix of
+   * every codeword bit, packed as (row << 8) | column, in the order read. Built the first time a
+   * version is read.
+   */
+  private static final AtomicReferenceArray<int[]> MODULE_POSITIONS =
+      new AtomicReferenceArray<>(30);
+
   private final BitMatrix mappingBitMatrix;
-  private final BitMatrix readMappingMatrix;
+  private BitMatrix readMappingMatrix;
   private final Version version;
+  // When not null, readModule() records the position of each module it reads here
+  private int[] modulePositions;
+  private int modulesRead;
 
   /**
    * @param bitMatrix {@link BitMatrix} to parse
@@ -40,7 +53,6 @@ final class BitMatrixParser {
     
     version = readVersion(bitMatrix);
     this.mappingBitMatrix = extractDataRegion(bitMatrix);
-    this.readMappingMatrix = new BitMatrix(this.mappingBitMatrix.getWidth(), this.mappingBitMatrix.getHeight());
   }
 
   Version getVersion() {
@@ -73,7 +85,53 @@ final class BitMatrixParser {
    * @throws FormatException if the exact number of bytes expected is not read
    */
   byte[] readCodewords() throws FormatException {
+    int[] positions = getModulePositions(version);
+    byte[] result = new byte[version.getTotalCodewords()];
+    int modulesRead = 0;
+    for (int resultOffset = 0; resultOffset < result.length; resultOffset++) {
+      int currentByte = 0;
+      for (int b = 0; b < 8; b++) {
+        int position = positions[modulesRead++];
+        currentByte <<= 1;
+        if (mappingBitMatrix.get(position & 0xFF, position >>> 8)) {
+          currentByte |= 1;
+        }
+      }
+      result[resultOffset] = (byte) currentByte;
+    }
+    return result;
+  }
 
+  /**
+   * Finds where each codeword bit is placed in symbols of the given version, by running the
+   * placement algorithm once over an empty symbol and noting each module it reads. Threads finding
+   * those of the same version at once each find them, and all then share the first stored.
+   */
+  private static int[] getModulePositions(Version version) throws FormatException {
+    int index = version.getVersionNumber() - 1;
+    int[] positions = MODULE_POSITIONS.get(index);
+    if (positions == null) {
+      BitMatrixParser parser =
+          new BitMatrixParser(new BitMatrix(version.getSymbolSizeColumns(), version.getSymbolSizeRows()));
+      parser.modulePositions = new int[version.getTotalCodewords() * 8];
+      parser.readCodewordsInPlacementOrder();
+      positions = parser.modulePositions;
+      if (!MODULE_POSITIONS.compareAndSet(index, null, positions)) {
+        positions = MODULE_POSITIONS.get(index);
+      }
+    }
+    return positions;
+  }
+
+  /**
+   * <p>Walks the placement algorithm to read the codewords, as {@link #readCodewords()} does.</p>
+   *
+   * @return bytes encoded within the Data Matrix Code
+   * @throws FormatException if the exact number of bytes expected is not read
+   */
+  byte[] readCodewordsInPlacementOrder() throws FormatException {
+
+    readMappingMatrix = new BitMatrix(mappingBitMatrix.getWidth(), mappingBitMatrix.getHeight());
     byte[] result = new byte[version.getTotalCodewords()];
     int resultOffset = 0;
     
@@ -162,6 +220,9 @@ final class BitMatrixParser {
       row += 4 - ((numColumns + 4) & 0x07);
     }
     readMappingMatrix.set(column, row);
+    if (modulePositions != null) {
+      modulePositions[modulesRead++] = (row << 8) | column;
+    }
     return mappingBitMatrix.get(column, row);
   }
   
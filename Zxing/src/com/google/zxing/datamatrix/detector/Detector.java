@@ -18,6 +18,7 @@ package com.google.zxing.datamatrix.detector;
 
 import com.google.zxing.NotFoundException;
 import com.google.zxing.ResultPoint;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.common.DetectorResult;
 import com.google.zxing.common.GridSampler;
@@ -41,10 +42,22 @@ import java.util.Map;
 public final class Detector {
 
   private final BitMatrix image;
+  private final GridSampler sampler;
   private final WhiteRectangleDetector rectangleDetector;
+  private BitArray rowBuffer;
 
   public Detector(BitMatrix image) throws NotFoundException {
+    this(image, GridSampler.getInstance());
+  }
+
+  /**
+   * @param image image to search
+   * @param sampler samples the grid of modules once the code is found
+   * @throws NotFoundException if the image is too small to contain a Data Matrix Code
+   */
+  public Detector(BitMatrix image, GridSampler sampler) throws NotFoundException {
     this.image = image;
+    this.sampler = sampler;
     rectangleDetector = new WhiteRectangleDetector(image);
   }
 
@@ -138,8 +151,8 @@ public final class Detector {
     // adjacent to the white module at the top right. Tracing to that corner from either the top left
     // or bottom right should work here.
     
-    int dimensionTop = transitionsBetween(topLeft, topRight).getTransitions();
-    int dimensionRight = transitionsBetween(bottomRight, topRight).getTransitions();
+    int dimensionTop = countTransitions(topLeft, topRight);
+    int dimensionRight = countTransitions(bottomRight, topRight);
     
     if ((dimensionTop & 0x01) == 1) {
       // it can't be odd, so, round... up?
@@ -168,8 +181,8 @@ public final class Detector {
         correctedTopRight = topRight;
       }
 
-      dimensionTop = transitionsBetween(topLeft, correctedTopRight).getTransitions();
-      dimensionRight = transitionsBetween(bottomRight, correctedTopRight).getTransitions();
+      dimensionTop = countTransitions(topLeft, correctedTopRight);
+      dimensionRight = countTransitions(bottomRight, correctedTopRight);
 
       if ((dimensionTop & 0x01) == 1) {
         // it can't be odd, so, round... up?
@@ -194,8 +207,8 @@ public final class Detector {
       }
 
       // Redetermine the dimension using the corrected top right point
-      int dimensionCorrected = Math.max(transitionsBetween(topLeft, correctedTopRight).getTransitions(),
-                                transitionsBetween(bottomRight, correctedTopRight).getTransitions());
+      int dimensionCorrected = Math.max(countTransitions(topLeft, correctedTopRight),
+                                        countTransitions(bottomRight, correctedTopRight));
       dimensionCorrected++;
       if ((dimensionCorrected & 0x01) == 1) {
         dimensionCorrected++;
@@ -248,10 +261,10 @@ public final class Detector {
       return c1;
     }
 
-    int l1 = Math.abs(dimensionTop - transitionsBetween(topLeft, c1).getTransitions()) +
-          Math.abs(dimensionRight - transitionsBetween(bottomRight, c1).getTransitions());
-    int l2 = Math.abs(dimensionTop - transitionsBetween(topLeft, c2).getTransitions()) +
-    Math.abs(dimensionRight - transitionsBetween(bottomRight, c2).getTransitions());
+    int l1 = Math.abs(dimensionTop - countTransitions(topLeft, c1)) +
+          Math.abs(dimensionRight - countTransitions(bottomRight, c1));
+    int l2 = Math.abs(dimensionTop - countTransitions(topLeft, c2)) +
+          Math.abs(dimensionRight - countTransitions(bottomRight, c2));
 
     if (l1 <= l2){
       return c1;
@@ -294,10 +307,8 @@ public final class Detector {
       return c1;
     }
 
-    int l1 = Math.abs(transitionsBetween(topLeft, c1).getTransitions() -
-                      transitionsBetween(bottomRight, c1).getTransitions());
-    int l2 = Math.abs(transitionsBetween(topLeft, c2).getTransitions() -
-                      transitionsBetween(bottomRight, c2).getTransitions());
+    int l1 = Math.abs(countTransitions(topLeft, c1) - countTransitions(bottomRight, c1));
+    int l2 = Math.abs(countTransitions(topLeft, c2) - countTransitions(bottomRight, c2));
 
     return l1 <= l2 ? c1 : c2;
   }
@@ -318,15 +329,13 @@ public final class Detector {
     table.put(key, value == null ? 1 : value + 1);
   }
 
-  private static BitMatrix sampleGrid(BitMatrix image,
-                                      ResultPoint topLeft,
-                                      ResultPoint bottomLeft,
-                                      ResultPoint bottomRight,
-                                      ResultPoint topRight,
-                                      int dimensionX,
-                                      int dimensionY) throws NotFoundException {
-
-    GridSampler sampler = GridSampler.getInstance();
+  private BitMatrix sampleGrid(BitMatrix image,
+                               ResultPoint topLeft,
+                               ResultPoint bottomLeft,
+                               ResultPoint bottomRight,
+                               ResultPoint topRight,
+                               int dimensionX,
+                               int dimensionY) throws NotFoundException {
 
     return sampler.sampleGrid(image,
                               dimensionX,
@@ -349,15 +358,26 @@ public final class Detector {
                               bottomLeft.getY());
   }
 
+  private ResultPointsAndTransitions transitionsBetween(ResultPoint from, ResultPoint to) {
+    return new ResultPointsAndTransitions(from, to, countTransitions(from, to));
+  }
+
   /**
    * Counts the number of black/white transitions between two points, using something like Bresenham's algorithm.
    */
-  private ResultPointsAndTransitions transitionsBetween(ResultPoint from, ResultPoint to) {
+  private int countTransitions(ResultPoint from, ResultPoint to) {
     // See QR Code Detector, sizeOfBlackWhiteBlackRun()
     int fromX = (int) from.getX();
     int fromY = (int) from.getY();
     int toX = (int) to.getX();
     int toY = (int) to.getY();
+    if (fromY == toY && fromX != toX) {
+      // The pixels visited are those from fromX up to, but not including, toX
+      return fromX < toX ? countRowTransitions(fromY, fromX, toX - 1) : countRowTransitions(fromY, toX + 1, fromX);
+    }
+    if (fromX == toX && fromY != toY) {
+      return fromY < toY ? countColumnTransitions(fromX, fromY, toY - 1) : countColumnTransitions(fromX, toY + 1, fromY);
+    }
     boolean steep = Math.abs(toY - fromY) > Math.abs(toX - fromX);
     if (steep) {
       int temp = fromX;
@@ -390,7 +410,48 @@ public final class Detector {
         error -= dx;
       }
     }
-    return new ResultPointsAndTransitions(from, to, transitions);
+    return transitions;
+  }
+
+  /**
+   * Counts transitions between adjacent pixels of row y from x = left to right, inclusive, comparing
+   * each word of the row with itself shifted by one pixel.
+   */
+  private int countRowTransitions(int y, int left, int right) {
+    rowBuffer = image.getRow(y, rowBuffer);
+    int[] words = rowBuffer.getBitArray();
+    int transitions = 0;
+    // Bit i of differences is set when pixels i and i + 1 differ; count those for i in [left, right)
+    for (int i = left >> 5; i <= (right - 1) >> 5 && left < right; i++) {
+      int word = words[i];
+      int next = i + 1 < words.length ? words[i + 1] : 0;
+      int differences = word ^ ((word >>> 1) | (next << 31));
+      int first = i << 5;
+      if (left > first) {
+        differences &= -1 << (left - first);
+      }
+      if (right - first < 32) {
+        differences &= (1 << (right - first)) - 1;
+      }
+      transitions += Integer.bitCount(differences);
+    }
+    return transitions;
+  }
+
+  /**
+   * Counts transitions between adjacent pixels of column x from y = top to bottom, inclusive.
+   */
+  private int countColumnTransitions(int x, int top, int bottom) {
+    int transitions = 0;
+    boolean inBlack = image.get(x, top);
+    for (int y = top + 1; y <= bottom; y++) {
+      boolean isBlack = image.get(x, y);
+      if (isBlack != inBlack) {
+        transitions++;
+        inBlack = isBlack;
+      }
+    }
+    return transitions;
   }
 
   /**
@@ -61,7 +61,7 @@ final class Base256Encoder implements Encoder {
     }
   }
   
-  private static char randomize255State(char ch, int codewordPosition) {
+  static char randomize255State(char ch, int codewordPosition) {
     int pseudoRandom = ((149 * codewordPosition) % 255) + 1;
     int tempVariable = ch + pseudoRandom;
     if (tempVariable <= 255) {
@@ -99,7 +99,7 @@ final class EdifactEncoder implements Encoder {
     }
   }
 
-  private static void encodeChar(char c, StringBuilder sb) {
+  static void encodeChar(char c, StringBuilder sb) {
     if (c >= ' ' && c <= '?') {
       sb.append(c);
     } else if (c >= '@' && c <= '^') {
@@ -109,7 +109,7 @@ final class EdifactEncoder implements Encoder {
     }
   }
 
-  private static String encodeToCodewords(CharSequence sb, int startPos) {
+  static String encodeToCodewords(CharSequence sb, int startPos) {
     int len = sb.length() - startPos;
     if (len == 0) {
       throw new IllegalStateException("StringBuilder must not be empty");
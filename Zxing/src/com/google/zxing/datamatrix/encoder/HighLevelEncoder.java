@@ -57,11 +57,11 @@ public final class HighLevelEncoder {
   /**
    * 05 Macro
    */
-  private static final char MACRO_05 = 236;
+  static final char MACRO_05 = 236;
   /**
    * 06 Macro
    */
-  private static final char MACRO_06 = 237;
+  static final char MACRO_06 = 237;
   /**
    * mode latch to ANSI X.12 encodation mode
    */
@@ -91,15 +91,15 @@ public final class HighLevelEncoder {
   /**
    * 05 Macro header
    */
-  private static final String MACRO_05_HEADER = "[)>\u001E05\u001D";
+  static final String MACRO_05_HEADER = "[)>\u001E05\u001D";
   /**
    * 06 Macro header
    */
-  private static final String MACRO_06_HEADER = "[)>\u001E06\u001D";
+  static final String MACRO_06_HEADER = "[)>\u001E06\u001D";
   /**
    * Macro trailer
    */
-  private static final String MACRO_TRAILER = "\u001E\u0004";
+  static final String MACRO_TRAILER = "\u001E\u0004";
 
   static final int ASCII_ENCODATION = 0;
   static final int C40_ENCODATION = 1;
@@ -195,14 +195,24 @@ public final class HighLevelEncoder {
     }
     //Padding
     StringBuilder codewords = context.getCodewords();
+    appendPadding(codewords, capacity);
+
+    return context.getCodewords().toString();
+  }
+
+  /**
+   * Pads the codewords up to the data capacity of the symbol.
+   *
+   * @param codewords the encoded message, ending in ASCII encodation
+   * @param capacity  the data capacity of the symbol
+   */
+  static void appendPadding(StringBuilder codewords, int capacity) {
     if (codewords.length() < capacity) {
       codewords.append(PAD);
     }
     while (codewords.length() < capacity) {
       codewords.append(randomize253State(PAD, codewords.length() + 1));
     }
-
-    return context.getCodewords().toString();
   }
 
   static int lookAheadTest(CharSequence msg, int startpos, int currentMode) {
@@ -397,7 +407,7 @@ public final class HighLevelEncoder {
     return (ch == ' ') || (ch >= '0' && ch <= '9') || (ch >= 'a' && ch <= 'z');
   }
 
-  private static boolean isNativeX12(char ch) {
+  static boolean isNativeX12(char ch) {
     return isX12TermSep(ch) || (ch == ' ') || (ch >= '0' && ch <= '9') || (ch >= 'A' && ch <= 'Z');
   }
 
@@ -407,7 +417,7 @@ public final class HighLevelEncoder {
         || (ch == '>');
   }
 
-  private static boolean isNativeEDIFACT(char ch) {
+  static boolean isNativeEDIFACT(char ch) {
     return ch >= ' ' && ch <= '^';
   }
 
@@ -0,0 +1,435 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.datamatrix.encoder;
+
+import com.google.zxing.Dimension;
+
+import java.util.Arrays;
+
+/**
+ * DataMatrix ECC 200 data encoder which, unlike {@link HighLevelEncoder}, does not switch
+ * encodation modes by looking ahead, but finds the switches giving the fewest codewords.
+ *
+ * <p>The cheapest way to reach every state after each character of the message is computed in a
+ * single pass, a state being an encodation mode together with the number of values still pending
+ * in an incomplete C40, Text or X12 triplet or EDIFACT quadruplet. The time taken is therefore
+ * linear in the length of the message.</p>
+ */
+public final class MinimalEncoder {
+
+  // Encodation states. C40, Text and X12 are followed by the states for 1 and 2 pending values,
+  // EDIFACT by those for 1 to 3 pending values
+  private static final int ASCII = 0;
+  private static final int C40 = 1;
+  private static final int TEXT = 4;
+  private static final int X12 = 7;
+  private static final int EDIFACT = 10;
+  private static final int BASE256 = 14;
+  private static final int STATES = 15;
+
+  // Costs are counted in twelfths of a codeword, so that a C40, Text or X12 value (two thirds of
+  // a codeword) and an EDIFACT value (three quarters) have whole costs
+  private static final int CODEWORD = 12;
+  private static final int C40_VALUE = 8;
+  private static final int EDIFACT_VALUE = 9;
+  private static final int INFINITY = Integer.MAX_VALUE / 2;
+
+  /**
+   * Cost of returning to ASCII encodation from each state. A pair of pending C40 or Text values
+   * is completed with a Shift 1 before the unlatch, and EDIFACT unlatches with the value 31 and
+   * fills the rest of the codeword, which is already partly paid for by the pending values.
+   */
+  private static final int[] UNLATCH_COSTS = {
+      0,
+      CODEWORD, INFINITY, C40_VALUE + CODEWORD,
+      CODEWORD, INFINITY, C40_VALUE + CODEWORD,
+      CODEWORD, INFINITY, INFINITY,
+      CODEWORD, 2 * CODEWORD - EDIFACT_VALUE, 3 * CODEWORD - 2 * EDIFACT_VALUE, 3 * CODEWORD - 3 * EDIFACT_VALUE,
+      0,
+  };
+
+  private static final char[] LATCHES = new char[STATES];
+  static {
+    LATCHES[C40] = HighLevelEncoder.LATCH_TO_C40;
+    LATCHES[TEXT] = HighLevelEncoder.LATCH_TO_TEXT;
+    LATCHES[X12] = HighLevelEncoder.LATCH_TO_ANSIX12;
+    LATCHES[EDIFACT] = HighLevelEncoder.LATCH_TO_EDIFACT;
+  }
+
+  private static final C40Encoder C40_ENCODER = new C40Encoder();
+  private static final C40Encoder TEXT_ENCODER = new TextEncoder();
+  private static final C40Encoder X12_ENCODER = new X12Encoder();
+
+  /**
+   * Number of C40 and Text values needed for each character
+   */
+  private static final int[] C40_VALUE_COUNTS = new int[256];
+  private static final int[] TEXT_VALUE_COUNTS = new int[256];
+  static {
+    StringBuilder values = new StringBuilder(4);
+    for (char c = 0; c < 256; c++) {
+      C40_VALUE_COUNTS[c] = C40_ENCODER.encodeChar(c, values);
+      TEXT_VALUE_COUNTS[c] = TEXT_ENCODER.encodeChar(c, values);
+      values.setLength(0);
+    }
+  }
+
+  private MinimalEncoder() {
+  }
+
+  /**
+   * Performs message encoding of a DataMatrix message using the fewest codewords.
+   *
+   * @param msg the message
+   * @return the encoded message (the char values range from 0 to 255)
+   */
+  public static String encodeHighLevel(String msg) {
+    return encodeHighLevel(msg, SymbolShapeHint.FORCE_NONE, null, null);
+  }
+
+  /**
+   * Performs message encoding of a DataMatrix message using the fewest codewords.
+   *
+   * @param msg     the message
+   * @param shape   requested shape. May be {@code SymbolShapeHint.FORCE_NONE},
+   *                {@code SymbolShapeHint.FORCE_SQUARE} or {@code SymbolShapeHint.FORCE_RECTANGLE}.
+   * @param minSize the minimum symbol size constraint or null for no constraint
+   * @param maxSize the maximum symbol size constraint or null for no constraint
+   * @return the encoded message (the char values range from 0 to 255)
+   */
+  public static String encodeHighLevel(String msg,
+                                       SymbolShapeHint shape,
+                                       Dimension minSize,
+                                       Dimension maxSize) {
+    EncoderContext context = new EncoderContext(msg);
+    String message = context.getMessage();
+    int start = 0;
+    int end = message.length();
+    if (message.startsWith(HighLevelEncoder.MACRO_05_HEADER) && message.endsWith(HighLevelEncoder.MACRO_TRAILER)) {
+      context.writeCodeword(HighLevelEncoder.MACRO_05);
+      start = HighLevelEncoder.MACRO_05_HEADER.length();
+      end -= HighLevelEncoder.MACRO_TRAILER.length();
+    } else if (message.startsWith(HighLevelEncoder.MACRO_06_HEADER) &&
+        message.endsWith(HighLevelEncoder.MACRO_TRAILER)) {
+      context.writeCodeword(HighLevelEncoder.MACRO_06);
+      start = HighLevelEncoder.MACRO_06_HEADER.length();
+      end -= HighLevelEncoder.MACRO_TRAILER.length();
+    }
+
+    int prefix = context.getCodewordCount();
+    int[] costs = new int[(end - start + 1) * STATES];
+    int[] previous = new int[costs.length];
+    computeCosts(message, start, end, costs, previous);
+
+    // Unless a smaller symbol is found below, end in ASCII encodation after unlatching from any
+    // other mode
+    int endNode = (end - start) * STATES + ASCII;
+    int asciiStart = end;
+    int dataLength = prefix + costs[endNode] / CODEWORD;
+    // The decoder leaves EDIFACT by itself when at most two codewords are left at the start of a
+    // group, so an unlatch group shorter than three codewords needs room for a full one after it
+    int edifactUnlatchPosition = findShortEdifactUnlatch(costs, previous, endNode);
+    if (edifactUnlatchPosition >= 0) {
+      dataLength = Math.max(dataLength, prefix + edifactUnlatchPosition + 3);
+    }
+    SymbolInfo symbolInfo = SymbolInfo.lookup(dataLength, shape, minSize, maxSize, true);
+
+    // The symbol may however end in C40, Text or X12 encodation without an unlatch, if it is then
+    // exactly full or has one ASCII codeword left, or in EDIFACT encodation without an unlatch, if
+    // at most two ASCII codewords are left
+    for (int i = Math.max(0, end - start - 2); i <= end - start; i++) {
+      for (int state = C40; state < BASE256; state++) {
+        int cost = costs[i * STATES + state];
+        if (cost >= INFINITY) {
+          continue;
+        }
+        int fromPosition;
+        int length;
+        int maxCapacity;
+        if (state < EDIFACT) {
+          int pending = (state - C40) % 3;
+          if (pending == 1 || (pending == 2 && state >= X12)) {
+            continue;
+          }
+          fromPosition = start + i;
+          int asciiLength = getASCIILength(message, fromPosition, end);
+          if (asciiLength > 1) {
+            continue;
+          }
+          length = prefix + (pending == 0 ? cost : cost + C40_VALUE) / CODEWORD + asciiLength;
+          maxCapacity = length;
+        } else {
+          int pending = state - EDIFACT;
+          fromPosition = start + i - pending;
+          int asciiLength = getASCIILength(message, fromPosition, end);
+          if (asciiLength > 2) {
+            continue;
+          }
+          int groupPosition = prefix + (cost - pending * EDIFACT_VALUE) / CODEWORD;
+          length = groupPosition + asciiLength;
+          maxCapacity = groupPosition + 2;
+        }
+        if (length < symbolInfo.getDataCapacity()) {
+          SymbolInfo candidate = SymbolInfo.lookup(length, shape, minSize, maxSize, true);
+          if (candidate.getDataCapacity() <= maxCapacity &&
+              candidate.getDataCapacity() < symbolInfo.getDataCapacity()) {
+            symbolInfo = candidate;
+            endNode = i * STATES + state;
+            asciiStart = fromPosition;
+          }
+        }
+      }
+    }
+
+    writeCodewords(context, message, start, getPath(previous, endNode));
+    writeASCII(context, message, asciiStart, end);
+
+    HighLevelEncoder.appendPadding(context.getCodewords(), symbolInfo.getDataCapacity());
+    return context.getCodewords().toString();
+  }
+
+  /**
+   * Computes the cheapest way to reach every state at every position in the message.
+   *
+   * @param costs    receives the cost of each state, indexed by position in the message *
+   *                 {@link #STATES} + state
+   * @param previous receives the state each state is reached from, indexed the same way
+   */
+  private static void computeCosts(String message, int start, int end, int[] costs, int[] previous) {
+    int length = end - start;
+    // The length of the Base 256 field so far, for the cheapest way to reach Base 256 at each position
+    int[] base256Counts = new int[length + 1];
+    Arrays.fill(costs, INFINITY);
+    costs[ASCII] = 0;
+
+    for (int i = 0; i <= length; i++) {
+      int node = i * STATES;
+      for (int state = C40; state < STATES; state++) {
+        relax(costs, previous, node + state, node + ASCII, UNLATCH_COSTS[state]);
+      }
+      relax(costs, previous, node + ASCII, node + C40, CODEWORD);
+      relax(costs, previous, node + ASCII, node + TEXT, CODEWORD);
+      relax(costs, previous, node + ASCII, node + X12, CODEWORD);
+      relax(costs, previous, node + ASCII, node + EDIFACT, CODEWORD);
+      if (i == length) {
+        break;
+      }
+
+      char c = message.charAt(start + i);
+      int next = node + STATES;
+      if (HighLevelEncoder.isDigit(c) && i + 1 < length && HighLevelEncoder.isDigit(message.charAt(start + i + 1))) {
+        relax(costs, previous, node + ASCII, next + STATES + ASCII, CODEWORD);
+      }
+      relax(costs, previous, node + ASCII, next + ASCII,
+            HighLevelEncoder.isExtendedASCII(c) ? 2 * CODEWORD : CODEWORD);
+
+      int c40Values = C40_VALUE_COUNTS[c];
+      int textValues = TEXT_VALUE_COUNTS[c];
+      boolean x12 = HighLevelEncoder.isNativeX12(c);
+      for (int pending = 0; pending < 3; pending++) {
+        relax(costs, previous, node + C40 + pending, next + C40 + (pending + c40Values) % 3,
+              c40Values * C40_VALUE);
+        relax(costs, previous, node + TEXT + pending, next + TEXT + (pending + textValues) % 3,
+              textValues * C40_VALUE);
+        if (x12) {
+          relax(costs, previous, node + X12 + pending, next + X12 + (pending + 1) % 3, C40_VALUE);
+        }
+      }
+      if (HighLevelEncoder.isNativeEDIFACT(c)) {
+        for (int pending = 0; pending < 4; pending++) {
+          relax(costs, previous, node + EDIFACT + pending, next + EDIFACT + (pending + 1) % 4, EDIFACT_VALUE);
+        }
+      }
+
+      // Base 256: a latch and a one codeword length field, which needs a second codeword once
+      // the field is longer than 249. Of two ways to reach the same position at the same cost,
+      // the one that has already paid for the longer length field, or else the shorter field, is
+      // never worse later on; at a lower cost it is never worse either, as the difference is a
+      // whole codeword.
+      int cost = costs[node + ASCII] + 3 * CODEWORD;
+      int continued = costs[node + BASE256] + (base256Counts[i] == 249 ? 2 * CODEWORD : CODEWORD);
+      int continuedCount = base256Counts[i] + 1;
+      if (continued < cost || (continued == cost && continuedCount > 249)) {
+        if (continued < INFINITY) {
+          costs[next + BASE256] = continued;
+          previous[next + BASE256] = node + BASE256;
+          base256Counts[i + 1] = continuedCount;
+        }
+      } else if (cost < INFINITY) {
+        costs[next + BASE256] = cost;
+        previous[next + BASE256] = node + ASCII;
+        base256Counts[i + 1] = 1;
+      }
+    }
+  }
+
+  private static int[] getPath(int[] previous, int endNode) {
+    int steps = 0;
+    for (int node = endNode; node != 0; node = previous[node]) {
+      steps++;
+    }
+    int[] path = new int[steps + 1];
+    for (int node = endNode; node != 0; node = previous[node]) {
+      path[steps--] = node;
+    }
+    return path;
+  }
+
+  /**
+   * @return the position of the last EDIFACT unlatch group, if shorter than three codewords and
+   *  followed only by ASCII encodation, or -1
+   */
+  private static int findShortEdifactUnlatch(int[] costs, int[] previous, int node) {
+    while (node != 0) {
+      int from = previous[node];
+      int fromState = from % STATES;
+      if (from / STATES == node / STATES) {
+        if (node % STATES == ASCII && (fromState == EDIFACT || fromState == EDIFACT + 1)) {
+          return (costs[from] - (fromState - EDIFACT) * EDIFACT_VALUE) / CODEWORD;
+        }
+        return -1;
+      }
+      if (fromState != ASCII) {
+        return -1;
+      }
+      node = from;
+    }
+    return -1;
+  }
+
+  /**
+   * Writes the codewords for the given path. If it ends in C40, Text or X12 encodation the last
+   * triplet is completed but no unlatch is written, and if it ends in EDIFACT encodation the
+   * pending characters are left to be written in ASCII.
+   */
+  private static void writeCodewords(EncoderContext context, String message, int start, int[] path) {
+    StringBuilder buffer = new StringBuilder();
+    for (int i = 1; i < path.length; i++) {
+      int from = path[i - 1];
+      int to = path[i];
+      int fromState = from % STATES;
+      int toState = to % STATES;
+      int position = start + from / STATES;
+      int consumed = to / STATES - from / STATES;
+      if (consumed == 0) {
+        if (toState == ASCII) {
+          // Unlatch
+          if (fromState == BASE256) {
+            writeBase256Field(context, buffer);
+          } else if (fromState < EDIFACT) {
+            writeC40Triplets(context, buffer);
+            context.writeCodeword(HighLevelEncoder.C40_UNLATCH);
+          } else {
+            buffer.append((char) 31); //Unlatch
+            context.writeCodewords(EdifactEncoder.encodeToCodewords(buffer, 0));
+          }
+          buffer.setLength(0);
+        } else {
+          context.writeCodeword(LATCHES[toState]);
+        }
+      } else if (toState == ASCII) {
+        writeASCII(context, message, position, position + consumed);
+      } else {
+        char c = message.charAt(position);
+        if (toState == BASE256) {
+          if (fromState == ASCII) {
+            context.writeCodeword(HighLevelEncoder.LATCH_TO_BASE256);
+          }
+          buffer.append(c);
+        } else if (toState >= EDIFACT) {
+          EdifactEncoder.encodeChar(c, buffer);
+          if (buffer.length() == 4) {
+            context.writeCodewords(EdifactEncoder.encodeToCodewords(buffer, 0));
+            buffer.setLength(0);
+          }
+        } else {
+          C40Encoder encoder = toState >= X12 ? X12_ENCODER : toState >= TEXT ? TEXT_ENCODER : C40_ENCODER;
+          encoder.encodeChar(c, buffer);
+          while (buffer.length() >= 3) {
+            C40Encoder.writeNextTriplet(context, buffer);
+          }
+        }
+      }
+    }
+    int endState = path[path.length - 1] % STATES;
+    if (endState != ASCII && endState < EDIFACT) {
+      writeC40Triplets(context, buffer);
+    }
+  }
+
+  private static void writeC40Triplets(EncoderContext context, StringBuilder buffer) {
+    if (buffer.length() % 3 == 2) {
+      buffer.append('\0'); //Shift 1
+    }
+    while (buffer.length() >= 3) {
+      C40Encoder.writeNextTriplet(context, buffer);
+    }
+  }
+
+  private static void writeASCII(EncoderContext context, String message, int from, int to) {
+    for (int i = from; i < to; i++) {
+      char c = message.charAt(i);
+      if (HighLevelEncoder.isDigit(c) && i + 1 < to && HighLevelEncoder.isDigit(message.charAt(i + 1))) {
+        int num = (c - '0') * 10 + message.charAt(++i) - '0';
+        context.writeCodeword((char) (num + 130));
+      } else if (HighLevelEncoder.isExtendedASCII(c)) {
+        context.writeCodeword(HighLevelEncoder.UPPER_SHIFT);
+        context.writeCodeword((char) (c - 128 + 1));
+      } else {
+        context.writeCodeword((char) (c + 1));
+      }
+    }
+  }
+
+  private static int getASCIILength(String message, int from, int to) {
+    int length = 0;
+    for (int i = from; i < to; i++) {
+      char c = message.charAt(i);
+      if (HighLevelEncoder.isDigit(c) && i + 1 < to && HighLevelEncoder.isDigit(message.charAt(i + 1))) {
+        i++;
+        length++;
+      } else {
+        length += HighLevelEncoder.isExtendedASCII(c) ? 2 : 1;
+      }
+    }
+    return length;
+  }
+
+  private static void relax(int[] costs, int[] previous, int from, int to, int cost) {
+    int total = costs[from] + cost;
+    if (total < costs[to]) {
+      costs[to] = total;
+      previous[to] = from;
+    }
+  }
+
+  private static void writeBase256Field(EncoderContext context, CharSequence data) {
+    int dataCount = data.length();
+    StringBuilder field = new StringBuilder(dataCount + 2);
+    if (dataCount <= 249) {
+      field.append((char) dataCount);
+    } else {
+      field.append((char) ((dataCount / 250) + 249));
+      field.append((char) (dataCount % 250));
+    }
+    field.append(data);
+    for (int i = 0; i < field.length(); i++) {
+      context.writeCodeword(Base256Encoder.randomize255State(field.charAt(i), context.getCodewordCount() + 1));
+    }
+  }
+
+}
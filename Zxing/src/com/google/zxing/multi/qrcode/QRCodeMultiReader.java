@@ -26,6 +26,7 @@ import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.DecoderResult;
 import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.GridSampler;
 import com.google.zxing.multi.MultipleBarcodeReader;
 import com.google.zxing.multi.qrcode.detector.MultiDetector;
 import com.google.zxing.qrcode.QRCodeReader;
@@ -58,7 +59,8 @@ public final class QRCodeMultiReader extends QRCodeReader implements MultipleBar
   @Override
   public Result[] decodeMultiple(BinaryBitmap image, Map<DecodeHintType,?> hints) throws NotFoundException {
     List<Result> results = new ArrayList<>();
-    DetectorResult[] detectorResults = new MultiDetector(image.getBlackMatrix()).detectMulti(hints);
+    MultiDetector detector = new MultiDetector(image.getBlackMatrix(), GridSampler.getInstance(hints));
+    DetectorResult[] detectorResults = detector.detectMulti(hints);
     for (DetectorResult detectorResult : detectorResults) {
       try {
         DecoderResult decoderResult = getDecoder().decode(detectorResult.getBits(), hints);
@@ -22,6 +22,7 @@ import com.google.zxing.ReaderException;
 import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.common.DetectorResult;
+import com.google.zxing.common.GridSampler;
 import com.google.zxing.qrcode.detector.Detector;
 import com.google.zxing.qrcode.detector.FinderPatternInfo;
 
@@ -44,6 +45,10 @@ public final class MultiDetector extends Detector {
     super(image);
   }
 
+  public MultiDetector(BitMatrix image, GridSampler sampler) {
+    super(image, sampler);
+  }
+
   public DetectorResult[] detectMulti(Map<DecodeHintType,?> hints) throws NotFoundException {
     BitMatrix image = getImage();
     ResultPointCallback resultPointCallback =
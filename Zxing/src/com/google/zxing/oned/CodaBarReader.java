@@ -342,4 +342,9 @@ public final class CodaBarReader extends OneDReader {
     return -1;
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    return new CodaBarReader();
+  }
+
 }
@@ -26,6 +26,7 @@ import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 
@@ -149,6 +150,28 @@ public final class Code128Reader extends OneDReader {
   private static final float MAX_AVG_VARIANCE = 0.25f;
   private static final float MAX_INDIVIDUAL_VARIANCE = 0.7f;
 
+  // Every code is 6 bars and spaces, each 1-4 modules wide, 11 modules in all
+  private static final int MODULES_IN_CODE = 11;
+
+  /**
+   * Maps the module widths of a code's 6 elements, 2 bits per element, to the code's index in
+   * {@link #CODE_PATTERNS}, or -1. Only the first 6 elements of the stop pattern are keyed, as in
+   * {@link #decodeCode(BitArray, int[], int)}.
+   */
+  private static final byte[] CODE_LOOKUP = new byte[1 << 12];
+
+  static {
+    Arrays.fill(CODE_LOOKUP, (byte) -1);
+    for (int d = 0; d < CODE_PATTERNS.length; d++) {
+      int[] pattern = CODE_PATTERNS[d];
+      int key = 0;
+      for (int i = 0; i < 6; i++) {
+        key = (key << 2) | (pattern[i] - 1);
+      }
+      CODE_LOOKUP[key] = (byte) d;
+    }
+  }
+
   private static final int CODE_SHIFT = 98;
 
   private static final int CODE_CODE_C = 99;
@@ -214,6 +237,11 @@ public final class Code128Reader extends OneDReader {
   private static int decodeCode(BitArray row, int[] counters, int rowOffset)
       throws NotFoundException {
     recordPattern(row, rowOffset, counters);
+    int code = lookupCode(counters);
+    if (code >= 0) {
+      return code;
+    }
+    // Widths are ambiguous; fall back to the closest pattern within tolerance
     float bestVariance = MAX_AVG_VARIANCE; // worst variance we'll accept
     int bestMatch = -1;
     for (int d = 0; d < CODE_PATTERNS.length; d++) {
@@ -232,6 +260,34 @@ public final class Code128Reader extends OneDReader {
     }
   }
 
+  /**
+   * Rounds each counter to a whole number of modules and looks the result up directly. This only
+   * succeeds when every counter is within 0.4 modules of its rounded width, in which case the code
+   * found is also the one with least variance, and within the variance limits.
+   *
+   * @return index into {@link #CODE_PATTERNS}, or -1 if the widths don't clearly match one
+   */
+  private static int lookupCode(int[] counters) {
+    int total = 0;
+    for (int counter : counters) {
+      total += counter;
+    }
+    if (total < MODULES_IN_CODE) {
+      return -1;
+    }
+    int key = 0;
+    for (int counter : counters) {
+      // Width in modules is counter * 11 / total; compare everything scaled up by total
+      int scaled = counter * MODULES_IN_CODE;
+      int modules = (2 * scaled + total) / (2 * total);
+      if (modules < 1 || modules > 4 || 5 * Math.abs(scaled - modules * total) > 2 * total) {
+        return -1;
+      }
+      key = (key << 2) | (modules - 1);
+    }
+    return CODE_LOOKUP[key];
+  }
+
   @Override
   public Result decodeRow(int rowNumber, BitArray row, Map<DecodeHintType,?> hints)
       throws NotFoundException, FormatException, ChecksumException {
@@ -536,4 +592,9 @@ public final class Code128Reader extends OneDReader {
 
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    return this;
+  }
+
 }
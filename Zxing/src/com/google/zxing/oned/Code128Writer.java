@@ -22,6 +22,7 @@ import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 
@@ -32,10 +33,13 @@ import java.util.Map;
  */
 public final class Code128Writer extends OneDimensionalCodeWriter {
 
+  private static final int CODE_START_A = 103;
   private static final int CODE_START_B = 104;
   private static final int CODE_START_C = 105;
+  private static final int CODE_CODE_A = 101;
   private static final int CODE_CODE_B = 100;
   private static final int CODE_CODE_C = 99;
+  private static final int CODE_SHIFT = 98;
   private static final int CODE_STOP = 106;
 
   // Dummy characters used to specify control characters in input
@@ -47,8 +51,20 @@ public final class Code128Writer extends OneDimensionalCodeWriter {
   private static final int CODE_FNC_1 = 102;   // Code A, Code B, Code C
   private static final int CODE_FNC_2 = 97;    // Code A, Code B
   private static final int CODE_FNC_3 = 96;    // Code A, Code B
+  private static final int CODE_FNC_4_A = 101; // Code A
   private static final int CODE_FNC_4_B = 100; // Code B
 
+  // Code sets, in the order preferred between equally short encodings
+  private static final int CODE_SET_B = 0;
+  private static final int CODE_SET_C = 1;
+  private static final int CODE_SET_A = 2;
+  private static final int NUM_CODE_SETS = 3;
+  private static final int[] START_CODES = {CODE_START_B, CODE_START_C, CODE_START_A};
+  private static final int[] CODE_CODES = {CODE_CODE_B, CODE_CODE_C, CODE_CODE_A};
+
+  // Encodings are compared by symbols, then by changes of code set, which this is larger than
+  private static final int SYMBOL_COST = 1 << 10;
+
   @Override
   public BitMatrix encode(String contents,
                           BarcodeFormat format,
@@ -72,7 +88,7 @@ public final class Code128Writer extends OneDimensionalCodeWriter {
     // Check content
     for (int i = 0; i < length; i++) {
       char c = contents.charAt(i);
-      if (c < ' ' || c > '~') {
+      if (c > 0x7F) {
         switch (c) {
           case ESCAPE_FNC_1:
           case ESCAPE_FNC_2:
@@ -84,86 +100,28 @@ public final class Code128Writer extends OneDimensionalCodeWriter {
         }
       }
     }
-    
+
     Collection<int[]> patterns = new ArrayList<>(); // temporary storage for patterns
     int checkSum = 0;
     int checkWeight = 1;
-    int codeSet = 0; // selected code (CODE_CODE_B or CODE_CODE_C)
-    int position = 0; // position in contents
-    
-    while (position < length) {
-      //Select code to use
-      int requiredDigitCount = codeSet == CODE_CODE_C ? 2 : 4;
-      int newCodeSet;
-      if (isDigits(contents, position, requiredDigitCount)) {
-        newCodeSet = CODE_CODE_C;
-      } else {
-        newCodeSet = CODE_CODE_B;
-      }
-      
-      //Get the pattern index
-      int patternIndex;
-      if (newCodeSet == codeSet) {
-        // Encode the current character
-        // First handle escapes
-        switch (contents.charAt(position)) {
-          case ESCAPE_FNC_1:
-            patternIndex = CODE_FNC_1;
-            break;
-          case ESCAPE_FNC_2:
-            patternIndex = CODE_FNC_2;
-            break;
-          case ESCAPE_FNC_3:
-            patternIndex = CODE_FNC_3;
-            break;
-          case ESCAPE_FNC_4:
-            patternIndex = CODE_FNC_4_B; // FIXME if this ever outputs Code A
-            break;
-          default:
-            // Then handle normal characters otherwise
-            if (codeSet == CODE_CODE_B) {
-              patternIndex = contents.charAt(position) - ' ';
-            } else { // CODE_CODE_C
-              patternIndex = Integer.parseInt(contents.substring(position, position + 2));
-              position++; // Also incremented below
-            }
-        }
-        position++;
-      } else {
-        // Should we change the current code?
-        // Do we have a code set?
-        if (codeSet == 0) {
-          // No, we don't have a code set
-          if (newCodeSet == CODE_CODE_B) {
-            patternIndex = CODE_START_B;
-          } else {
-            // CODE_CODE_C
-            patternIndex = CODE_START_C;
-          }
-        } else {
-          // Yes, we have a code set
-          patternIndex = newCodeSet;
-        }
-        codeSet = newCodeSet;
-      }
-      
+    for (int patternIndex : planCodes(contents)) {
       // Get the pattern
       patterns.add(Code128Reader.CODE_PATTERNS[patternIndex]);
-      
-      // Compute checksum
+
+      // Compute checksum; the start code and the first code after it both have weight 1
       checkSum += patternIndex * checkWeight;
-      if (position != 0) {
+      if (patterns.size() > 1) {
         checkWeight++;
       }
     }
-    
+
     // Compute and append checksum
     checkSum %= 103;
     patterns.add(Code128Reader.CODE_PATTERNS[checkSum]);
-    
+
     // Append stop code
     patterns.add(Code128Reader.CODE_PATTERNS[CODE_STOP]);
-    
+
     // Compute code width
     int codeWidth = 0;
     for (int[] pattern : patterns) {
@@ -182,19 +140,143 @@ public final class Code128Writer extends OneDimensionalCodeWriter {
     return result;
   }
 
-  private static boolean isDigits(CharSequence value, int start, int length) {
-    int end = start + length;
-    int last = value.length();
-    for (int i = start; i < end && i < last; i++) {
-      char c = value.charAt(i);
-      if (c < '0' || c > '9') {
-        if (c != ESCAPE_FNC_1) {
-          return false;
+  /**
+   * Chooses the code sets to encode the contents with in the fewest symbols, and so the narrowest
+   * barcode, and among those with the fewest changes of code set.
+   *
+   * <p>The cheapest way to encode each prefix of the contents ending in each code set is found
+   * in a single pass, by extending those of shorter prefixes: by one character in code set A or B,
+   * two digits or FNC1 in code set C, either after a code to change to that set, or by one
+   * character of the other of A and B after a shift.</p>
+   *
+   * @return codes to encode the contents with, from start code to last data code
+   */
+  private static int[] planCodes(CharSequence contents) {
+    int length = contents.length();
+    // For the first i characters ending in code set "set", at index i * NUM_CODE_SETS + set: the
+    // least cost, and the index it was reached from, negated and less one if through a shift
+    int[] costs = new int[(length + 1) * NUM_CODE_SETS];
+    int[] previous = new int[(length + 1) * NUM_CODE_SETS];
+    Arrays.fill(costs, Integer.MAX_VALUE);
+    for (int set = 0; set < NUM_CODE_SETS; set++) {
+      costs[set] = SYMBOL_COST; // start code
+    }
+
+    for (int i = 0; i < length; i++) {
+      for (int set = 0; set < NUM_CODE_SETS; set++) {
+        int from = i * NUM_CODE_SETS + set;
+        int cost = costs[from];
+        if (cost == Integer.MAX_VALUE) {
+          continue;
+        }
+        // Stay in this code set first, so that it is kept when changing is no shorter
+        for (int k = 0; k < NUM_CODE_SETS; k++) {
+          int newSet = (set + k) % NUM_CODE_SETS;
+          int consumed = getCharCount(contents, i, newSet);
+          if (consumed > 0) {
+            int newCost = cost + (newSet == set ? SYMBOL_COST : 2 * SYMBOL_COST + 1);
+            int to = (i + consumed) * NUM_CODE_SETS + newSet;
+            if (newCost < costs[to]) {
+              costs[to] = newCost;
+              previous[to] = from;
+            }
+          }
+        }
+        if (set != CODE_SET_C && getCharCount(contents, i, set) == 0 &&
+            getCharCount(contents, i, otherSet(set)) > 0) {
+          int newCost = cost + 2 * SYMBOL_COST + 1;
+          int to = from + NUM_CODE_SETS;
+          if (newCost < costs[to]) {
+            costs[to] = newCost;
+            previous[to] = -from - 1;
+          }
         }
-        end++; // ignore FNC_1
       }
     }
-    return end <= last; // end > last if we've run out of string
+
+    int index = length * NUM_CODE_SETS;
+    for (int set = 1; set < NUM_CODE_SETS; set++) {
+      if (costs[length * NUM_CODE_SETS + set] < costs[index]) {
+        index = length * NUM_CODE_SETS + set;
+      }
+    }
+
+    // Walk back, filling in codes from the end
+    int[] codes = new int[costs[index] / SYMBOL_COST];
+    int c = codes.length;
+    while (index >= NUM_CODE_SETS) {
+      int set = index % NUM_CODE_SETS;
+      int from = previous[index];
+      if (from < 0) {
+        from = -from - 1;
+        codes[--c] = getCode(contents, from / NUM_CODE_SETS, otherSet(set));
+        codes[--c] = CODE_SHIFT;
+      } else {
+        codes[--c] = getCode(contents, from / NUM_CODE_SETS, set);
+        if (from % NUM_CODE_SETS != set) {
+          codes[--c] = CODE_CODES[set];
+        }
+      }
+      index = from;
+    }
+    codes[--c] = START_CODES[index];
+    return codes;
+  }
+
+  private static int otherSet(int set) {
+    return set == CODE_SET_A ? CODE_SET_B : CODE_SET_A;
+  }
+
+  /**
+   * @return number of characters from the given position one code in the given code set encodes,
+   *  or 0 if it cannot encode the character there
+   */
+  private static int getCharCount(CharSequence contents, int position, int set) {
+    char c = contents.charAt(position);
+    switch (set) {
+      case CODE_SET_A:
+        return c < 0x60 || (c >= ESCAPE_FNC_1 && c <= ESCAPE_FNC_4) ? 1 : 0;
+      case CODE_SET_B:
+        return c >= ' ' ? 1 : 0;
+      default: // CODE_SET_C
+        if (c == ESCAPE_FNC_1) {
+          return 1;
+        }
+        if (isDigit(c) && position + 1 < contents.length() && isDigit(contents.charAt(position + 1))) {
+          return 2;
+        }
+        return 0;
+    }
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * @return the code for the character, or two digits in code set C, at the given position
+   */
+  private static int getCode(CharSequence contents, int position, int set) {
+    char c = contents.charAt(position);
+    switch (c) {
+      case ESCAPE_FNC_1:
+        return CODE_FNC_1;
+      case ESCAPE_FNC_2:
+        return CODE_FNC_2;
+      case ESCAPE_FNC_3:
+        return CODE_FNC_3;
+      case ESCAPE_FNC_4:
+        return set == CODE_SET_A ? CODE_FNC_4_A : CODE_FNC_4_B;
+      default:
+        switch (set) {
+          case CODE_SET_A:
+            return c < ' ' ? c + 64 : c - ' ';
+          case CODE_SET_B:
+            return c - ' ';
+          default: // CODE_SET_C
+            return (c - '0') * 10 + (contents.charAt(position + 1) - '0');
+        }
+    }
   }
 
 }
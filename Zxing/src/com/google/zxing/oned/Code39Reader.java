@@ -55,6 +55,18 @@ public final class Code39Reader extends OneDReader {
 
   static final int ASTERISK_ENCODING = CHARACTER_ENCODINGS[39];
 
+  /**
+   * Inverse of {@link #CHARACTER_ENCODINGS}, indexed by 9-bit narrow/wide pattern. Patterns that
+   * aren't valid characters map to 0.
+   */
+  private static final char[] PATTERN_TO_CHAR = new char[1 << 9];
+
+  static {
+    for (int i = 0; i < CHARACTER_ENCODINGS.length; i++) {
+      PATTERN_TO_CHAR[CHARACTER_ENCODINGS[i]] = ALPHABET_STRING.charAt(i);
+    }
+  }
+
   private final boolean usingCheckDigit;
   private final boolean extendedMode;
   private final StringBuilder decodeRowResult;
@@ -215,54 +227,60 @@ public final class Code39Reader extends OneDReader {
   // per image when using some of our blackbox images.
   private static int toNarrowWidePattern(int[] counters) {
     int numCounters = counters.length;
-    int maxNarrowCounter = 0;
-    int wideCounters;
-    do {
-      int minCounter = Integer.MAX_VALUE;
-      for (int counter : counters) {
-        if (counter < minCounter && counter > maxNarrowCounter) {
-          minCounter = counter;
-        }
-      }
-      maxNarrowCounter = minCounter;
-      wideCounters = 0;
-      int totalWideCountersWidth = 0;
-      int pattern = 0;
-      for (int i = 0; i < numCounters; i++) {
-        int counter = counters[i];
-        if (counter > maxNarrowCounter) {
-          pattern |= 1 << (numCounters - 1 - i);
-          wideCounters++;
-          totalWideCountersWidth += counter;
+    // Exactly 3 counters must be wide, so find the 3rd and 4th widest in one pass; all
+    // counters wider than the 4th are wide, and that must leave 3 of them
+    int first = 0;
+    int second = 0;
+    int third = 0;
+    int fourth = 0;
+    for (int counter : counters) {
+      if (counter > fourth) {
+        if (counter > third) {
+          fourth = third;
+          if (counter > second) {
+            third = second;
+            if (counter > first) {
+              second = first;
+              first = counter;
+            } else {
+              second = counter;
+            }
+          } else {
+            third = counter;
+          }
+        } else {
+          fourth = counter;
         }
       }
-      if (wideCounters == 3) {
-        // Found 3 wide counters, but are they close enough in width?
+    }
+    if (fourth == 0 || fourth == third) {
+      return -1;
+    }
+    int maxNarrowCounter = fourth;
+    int totalWideCountersWidth = first + second + third;
+    int pattern = 0;
+    for (int i = 0; i < numCounters; i++) {
+      int counter = counters[i];
+      if (counter > maxNarrowCounter) {
+        // Found a wide counter, but is it close enough in width to the others?
         // We can perform a cheap, conservative check to see if any individual
         // counter is more than 1.5 times the average:
-        for (int i = 0; i < numCounters && wideCounters > 0; i++) {
-          int counter = counters[i];
-          if (counter > maxNarrowCounter) {
-            wideCounters--;
-            // totalWideCountersWidth = 3 * average, so this checks if counter >= 3/2 * average
-            if ((counter * 2) >= totalWideCountersWidth) {
-              return -1;
-            }
-          }
+        // totalWideCountersWidth = 3 * average, so this checks if counter >= 3/2 * average
+        if ((counter * 2) >= totalWideCountersWidth) {
+          return -1;
         }
-        return pattern;
+        pattern |= 1 << (numCounters - 1 - i);
       }
-    } while (wideCounters > 3);
-    return -1;
+    }
+    return pattern;
   }
 
   private static char patternToChar(int pattern) throws NotFoundException {
-    for (int i = 0; i < CHARACTER_ENCODINGS.length; i++) {
-      if (CHARACTER_ENCODINGS[i] == pattern) {
-        return ALPHABET_STRING.charAt(i);
-      }
+    char c = PATTERN_TO_CHAR[pattern];
+    if (c == 0) {
+      throw NotFoundException.getNotFoundInstance();
     }
-    throw NotFoundException.getNotFoundInstance();
+    return c;
   }
 
   private static String decodeExtended(CharSequence encoded) throws FormatException {
@@ -321,4 +339,9 @@ public final class Code39Reader extends OneDReader {
     return decoded.toString();
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    return new Code39Reader(usingCheckDigit, extendedMode);
+  }
+
 }
@@ -54,6 +54,18 @@ public final class Code93Reader extends OneDReader {
   };
   private static final int ASTERISK_ENCODING = CHARACTER_ENCODINGS[47];
 
+  /**
+   * Inverse of {@link #CHARACTER_ENCODINGS}, indexed by 9-bit pattern. Patterns that
+   * aren't valid characters map to 0.
+   */
+  private static final char[] PATTERN_TO_CHAR = new char[1 << 9];
+
+  static {
+    for (int i = 0; i < CHARACTER_ENCODINGS.length; i++) {
+      PATTERN_TO_CHAR[CHARACTER_ENCODINGS[i]] = ALPHABET[i];
+    }
+  }
+
   private final StringBuilder decodeRowResult;
   private final int[] counters;
 
@@ -186,12 +198,12 @@ public final class Code93Reader extends OneDReader {
   }
 
   private static char patternToChar(int pattern) throws NotFoundException {
-    for (int i = 0; i < CHARACTER_ENCODINGS.length; i++) {
-      if (CHARACTER_ENCODINGS[i] == pattern) {
-        return ALPHABET[i];
-      }
+    // Widths that don't add up to 9 modules can yield patterns longer than 9 bits
+    char c = pattern < PATTERN_TO_CHAR.length ? PATTERN_TO_CHAR[pattern] : 0;
+    if (c == 0) {
+      throw NotFoundException.getNotFoundInstance();
     }
-    throw NotFoundException.getNotFoundInstance();
+    return c;
   }
 
   private static String decodeExtended(CharSequence encoded) throws FormatException {
@@ -284,4 +296,9 @@ public final class Code93Reader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    return new Code93Reader();
+  }
+
 }
@@ -135,4 +135,9 @@ public final class EAN13Reader extends UPCEANReader {
     throw NotFoundException.getNotFoundInstance();
   }
 
+  @Override
+  protected UPCEANReader forkRowReader() {
+    return new EAN13Reader();
+  }
+
 }
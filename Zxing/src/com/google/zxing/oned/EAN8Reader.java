@@ -72,4 +72,9 @@ public final class EAN8Reader extends UPCEANReader {
     return BarcodeFormat.EAN_8;
   }
 
+  @Override
+  protected UPCEANReader forkRowReader() {
+    return new EAN8Reader();
+  }
+
 }
@@ -351,4 +351,9 @@ public final class ITFReader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    return new ITFReader();
+  }
+
 }
@@ -27,6 +27,7 @@ import com.google.zxing.oned.rss.RSS14Reader;
 import com.google.zxing.oned.rss.expanded.RSSExpandedReader;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Map;
 
@@ -87,6 +88,10 @@ public final class MultiFormatOneDReader extends OneDReader {
     this.readers = readers.toArray(new OneDReader[readers.size()]);
   }
 
+  private MultiFormatOneDReader(OneDReader[] readers) {
+    this.readers = readers;
+  }
+
   @Override
   public Result decodeRow(int rowNumber,
                           BitArray row,
@@ -109,4 +114,41 @@ public final class MultiFormatOneDReader extends OneDReader {
     }
   }
 
+  /**
+   * Forks all the underlying readers. Note that the RSS readers accumulate pairs across rows,
+   * so if any of them is in use, this reader is split instead; see {@link #splitRowReader()}.
+   */
+  @Override
+  protected OneDReader forkRowReader() {
+    OneDReader[] forks = new OneDReader[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      forks[i] = readers[i].forkRowReader();
+      if (forks[i] == null) {
+        return null;
+      }
+    }
+    return new MultiFormatOneDReader(forks);
+  }
+
+  /**
+   * Splits the underlying readers before the first which can't be forked. The RSS readers come
+   * last, so the others scan rows in parallel, and the RSS readers are given them in order after.
+   */
+  @Override
+  protected OneDReader[] splitRowReader() {
+    OneDReader[] forks = new OneDReader[readers.length];
+    int numForked = 0;
+    while (numForked < readers.length &&
+        (forks[numForked] = readers[numForked].forkRowReader()) != null) {
+      numForked++;
+    }
+    if (numForked == 0 || numForked == readers.length) {
+      return null;
+    }
+    return new OneDReader[] {
+        new MultiFormatOneDReader(Arrays.copyOf(forks, numForked)),
+        new MultiFormatOneDReader(Arrays.copyOfRange(readers, numForked, readers.length)),
+    };
+  }
+
 }
@@ -66,6 +66,10 @@ public final class MultiFormatUPCEANReader extends OneDReader {
     this.readers = readers.toArray(new UPCEANReader[readers.size()]);
   }
 
+  private MultiFormatUPCEANReader(UPCEANReader[] readers) {
+    this.readers = readers;
+  }
+
   @Override
   public Result decodeRow(int rowNumber,
                           BitArray row,
@@ -121,4 +125,16 @@ public final class MultiFormatUPCEANReader extends OneDReader {
     }
   }
 
+  @Override
+  protected OneDReader forkRowReader() {
+    UPCEANReader[] forks = new UPCEANReader[readers.length];
+    for (int i = 0; i < readers.length; i++) {
+      forks[i] = readers[i].forkRowReader();
+      if (forks[i] == null) {
+        return null;
+      }
+    }
+    return new MultiFormatUPCEANReader(forks);
+  }
+
 }
@@ -28,9 +28,17 @@ import com.google.zxing.ResultMetadataType;
 import com.google.zxing.ResultPoint;
 import com.google.zxing.common.BitArray;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.EnumMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Encapsulates functionality and implementation that is common to all families
@@ -86,6 +94,30 @@ public abstract class OneDReader implements Reader {
     // do nothing
   }
 
+  /**
+   * Returns a reader which another thread can use to decode rows at the same time as this one,
+   * when rows are scanned in parallel. Readers without per-decode state may return themselves.
+   *
+   * @return an independent reader with the same configuration, or {@code null} if this reader
+   *  keeps state across rows and so must see them one at a time, in order
+   */
+  protected OneDReader forkRowReader() {
+    return null;
+  }
+
+  /**
+   * Splits a reader which can't be forked as a whole, when rows are scanned in parallel, into a
+   * part which can, to scan rows in parallel, and a part which keeps state across rows, to be given
+   * them one at a time, in order, afterwards. Where both parts decode the same row, the result of
+   * the first is taken.
+   *
+   * @return the part which can be forked and the part which can't, or {@code null} if this reader
+   *  can't be split so
+   */
+  protected OneDReader[] splitRowReader() {
+    return null;
+  }
+
   /**
    * We're going to examine rows from the middle outward, searching alternately above and below the
    * middle, and farther out each time. rowStep is the number of rows between each successive
@@ -116,12 +148,24 @@ public abstract class OneDReader implements Reader {
       maxLines = 15; // 15 rows spaced 1/32 apart is roughly the middle half of the image
     }
 
+    if (tryHarder && hints.containsKey(DecodeHintType.ROW_SCAN_EXECUTOR)) {
+      ExecutorService executor = (ExecutorService) hints.get(DecodeHintType.ROW_SCAN_EXECUTOR);
+      OneDReader fork = forkRowReader();
+      if (fork != null) {
+        return doDecodeInParallel(image, hints, executor, this, fork, null, middle, rowStep,
+            maxLines);
+      }
+      OneDReader[] parts = splitRowReader();
+      if (parts != null) {
+        return doDecodeInParallel(image, hints, executor, parts[0], parts[0].forkRowReader(),
+            parts[1], middle, rowStep, maxLines);
+      }
+    }
+
     for (int x = 0; x < maxLines; x++) {
 
       // Scanning from the middle out. Determine which row we're looking at next:
-      int rowStepsAboveOrBelow = (x + 1) / 2;
-      boolean isAbove = (x & 0x01) == 0; // i.e. is x even?
-      int rowNumber = middle + rowStep * (isAbove ? rowStepsAboveOrBelow : -rowStepsAboveOrBelow);
+      int rowNumber = getRowNumber(x, middle, rowStep);
       if (rowNumber < 0 || rowNumber >= height) {
         // Oops, if we run off the top or bottom, stop
         break;
@@ -156,13 +200,7 @@ public abstract class OneDReader implements Reader {
           // We found our barcode
           if (attempt == 1) {
             // But it was upside down, so note that
-            result.putMetadata(ResultMetadataType.ORIENTATION, 180);
-            // And remember to flip the result points horizontally.
-            ResultPoint[] points = result.getResultPoints();
-            if (points != null) {
-              points[0] = new ResultPoint(width - points[0].getX() - 1, points[0].getY());
-              points[1] = new ResultPoint(width - points[1].getX() - 1, points[1].getY());
-            }
+            markUpsideDown(result, width);
           }
           return result;
         } catch (ReaderException re) {
@@ -174,6 +212,190 @@ public abstract class OneDReader implements Reader {
     throw NotFoundException.getNotFoundInstance();
   }
 
+  /**
+   * Scans the same sequence of rows as {@link #doDecode(BinaryBitmap, Map)}, but spreads them over
+   * several tasks run by the given executor. Each task takes the next row in middle-out order
+   * and decodes it with its own reader. Once some row decodes, rows further out are skipped, but
+   * rows closer to the middle are still finished, so the result is the one a sequential scan would
+   * have returned. Result point callbacks are not invoked, since they would run on other threads.
+   *
+   * <p>A sequential reader, if given, is tried after the parallel reader on each row, as in
+   * {@link #splitRowReader()}. It is given rows once the parallel scan is done: those before the
+   * row decoded, and that row too if it only decoded upside down, so that it sees the rows a
+   * sequential scan would have shown it, in the same order.</p>
+   */
+  private static Result doDecodeInParallel(final BinaryBitmap image,
+                                           Map<DecodeHintType,?> hints,
+                                           ExecutorService executor,
+                                           final OneDReader parallelReader,
+                                           OneDReader fork,
+                                           OneDReader sequentialReader,
+                                           final int middle,
+                                           final int rowStep,
+                                           final int maxLines) throws NotFoundException {
+    final int width = image.getWidth();
+    final int height = image.getHeight();
+
+    final Map<DecodeHintType,Object> workerHints = new EnumMap<>(DecodeHintType.class);
+    workerHints.putAll(hints);
+    workerHints.remove(DecodeHintType.NEED_RESULT_POINT_CALLBACK);
+
+    // Next row index to hand out, and the lowest index past which nothing more needs scanning:
+    // either the lowest that decoded, or the first that ran off the image
+    final AtomicInteger nextLine = new AtomicInteger();
+    final AtomicInteger lastLine = new AtomicInteger(maxLines);
+    final AtomicInteger offImageLine = new AtomicInteger(maxLines);
+
+    int numTasks = Math.max(1, Math.min(maxLines, Runtime.getRuntime().availableProcessors()));
+    final int[] foundLines = new int[numTasks];
+    final int[] foundAttempts = new int[numTasks];
+    Collection<Callable<Result>> tasks = new ArrayList<>(numTasks);
+    for (int i = 0; i < numTasks; i++) {
+      final int task = i;
+      final OneDReader reader;
+      if (i == 0) {
+        reader = parallelReader;
+      } else if (i == 1) {
+        reader = fork;
+      } else {
+        reader = parallelReader.forkRowReader();
+      }
+      tasks.add(new Callable<Result>() {
+        @Override
+        public Result call() {
+          BitArray row = new BitArray(width);
+          int x;
+          while ((x = nextLine.getAndIncrement()) < lastLine.get()) {
+            int rowNumber = getRowNumber(x, middle, rowStep);
+            if (rowNumber < 0 || rowNumber >= height) {
+              lowerTo(offImageLine, x);
+              lowerTo(lastLine, x);
+              return null;
+            }
+            try {
+              // Binarizers reuse their buffers, so only one row can be fetched at a time
+              synchronized (image) {
+                row = image.getBlackRow(rowNumber, row);
+              }
+            } catch (NotFoundException ignored) {
+              continue;
+            }
+            for (int attempt = 0; attempt < 2; attempt++) {
+              if (attempt == 1) {
+                row.reverse();
+              }
+              try {
+                Result result = reader.decodeRow(rowNumber, row, workerHints);
+                if (attempt == 1) {
+                  markUpsideDown(result, width);
+                }
+                foundLines[task] = x;
+                foundAttempts[task] = attempt;
+                lowerTo(lastLine, x);
+                return result;
+              } catch (ReaderException re) {
+                // continue -- just couldn't decode this row
+              }
+            }
+          }
+          return null;
+        }
+      });
+    }
+
+    List<Future<Result>> futures;
+    try {
+      futures = executor.invokeAll(tasks);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw NotFoundException.getNotFoundInstance();
+    }
+
+    Result best = null;
+    int bestLine = offImageLine.get();
+    int bestAttempt = 0;
+    for (int i = 0; i < numTasks; i++) {
+      Result result;
+      try {
+        result = futures.get(i).get();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw NotFoundException.getNotFoundInstance();
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
+      if (result != null && foundLines[i] < bestLine) {
+        best = result;
+        bestLine = foundLines[i];
+        bestAttempt = foundAttempts[i];
+      }
+    }
+
+    if (sequentialReader != null) {
+      BitArray row = new BitArray(width);
+      for (int x = 0; x <= bestLine; x++) {
+        int numAttempts = x < bestLine ? 2 : bestAttempt;
+        if (numAttempts == 0) {
+          break;
+        }
+        int rowNumber = getRowNumber(x, middle, rowStep);
+        try {
+          row = image.getBlackRow(rowNumber, row);
+        } catch (NotFoundException ignored) {
+          continue;
+        }
+        for (int attempt = 0; attempt < numAttempts; attempt++) {
+          if (attempt == 1) {
+            row.reverse();
+          }
+          try {
+            Result result = sequentialReader.decodeRow(rowNumber, row, workerHints);
+            if (attempt == 1) {
+              markUpsideDown(result, width);
+            }
+            return result;
+          } catch (ReaderException re) {
+            // continue -- just couldn't decode this row
+          }
+        }
+      }
+    }
+
+    if (best == null) {
+      throw NotFoundException.getNotFoundInstance();
+    }
+    return best;
+  }
+
+  private static int getRowNumber(int x, int middle, int rowStep) {
+    int rowStepsAboveOrBelow = (x + 1) / 2;
+    boolean isAbove = (x & 0x01) == 0; // i.e. is x even?
+    return middle + rowStep * (isAbove ? rowStepsAboveOrBelow : -rowStepsAboveOrBelow);
+  }
+
+  private static void lowerTo(AtomicInteger value, int newValue) {
+    int current;
+    while ((current = value.get()) > newValue) {
+      if (value.compareAndSet(current, newValue)) {
+        return;
+      }
+    }
+  }
+
+  private static void markUpsideDown(Result result, int width) {
+    result.putMetadata(ResultMetadataType.ORIENTATION, 180);
+    // And remember to flip the result points horizontally.
+    ResultPoint[] points = result.getResultPoints();
+    if (points != null) {
+      points[0] = new ResultPoint(width - points[0].getX() - 1, points[0].getY());
+      points[1] = new ResultPoint(width - points[1].getX() - 1, points[1].getY());
+    }
+  }
+
   /**
    * Records the size of successive runs of white and black pixels in a row, starting at a given point.
    * The values are recorded in the given array, and the number of runs recorded is equal to the size
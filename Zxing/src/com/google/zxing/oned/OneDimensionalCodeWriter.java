@@ -20,6 +20,7 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.Writer;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 
 import java.util.Map;
@@ -81,12 +82,22 @@ public abstract class OneDimensionalCodeWriter implements Writer {
     int multiple = outputWidth / fullWidth;
     int leftPadding = (outputWidth - (inputWidth * multiple)) / 2;
 
-    BitMatrix output = new BitMatrix(outputWidth, outputHeight);
-    for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
+    // Every row is the same, so scale the bars into one row, filling each bar at a time, and copy
+    // it into all of them
+    BitArray row = new BitArray(outputWidth);
+    for (int inputX = 0; inputX < inputWidth; inputX++) {
       if (code[inputX]) {
-        output.setRegion(outputX, 0, multiple, outputHeight);
+        int start = inputX;
+        while (inputX + 1 < inputWidth && code[inputX + 1]) {
+          inputX++;
+        }
+        row.setRange(leftPadding + start * multiple, leftPadding + (inputX + 1) * multiple);
       }
     }
+    BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+    for (int y = 0; y < outputHeight; y++) {
+      output.setRow(y, row);
+    }
     return output;
   }
 
@@ -395,4 +395,10 @@ public abstract class UPCEANReader extends OneDReader {
                                       int[] startRange,
                                       StringBuilder resultString) throws NotFoundException;
 
+  // Narrowed so that MultiFormatUPCEANReader can fork the readers it holds
+  @Override
+  protected UPCEANReader forkRowReader() {
+    return null;
+  }
+
 }
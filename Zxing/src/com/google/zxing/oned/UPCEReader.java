@@ -177,4 +177,9 @@ public final class UPCEReader extends UPCEANReader {
     return result.toString();
   }
 
+  @Override
+  protected UPCEANReader forkRowReader() {
+    return new UPCEReader();
+  }
+
 }
@@ -25,7 +25,7 @@ import com.google.zxing.ResultPointCallback;
 import com.google.zxing.common.BitArray;
 
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -53,12 +53,22 @@ public final class RSS14Reader extends AbstractRSSReader {
       {1,3,9,1},
   };
 
+  // Most pairs kept for each side; past this, the least often seen pair is dropped
+  private static final int MAX_POSSIBLE_PAIRS = 32;
+  // 16 * 5 == 1 (mod 79), used to solve the checksum for the right pair's portion
+  private static final int INVERSE_OF_16_MOD_79 = 5;
+
   private final List<Pair> possibleLeftPairs;
   private final List<Pair> possibleRightPairs;
+  // Pairs seen often enough to be trusted, by finder pattern value and checksum portion mod 79
+  private final Map<Integer,List<Pair>> confirmedLeftPairs;
+  private final Map<Integer,List<Pair>> confirmedRightPairs;
 
   public RSS14Reader() {
     possibleLeftPairs = new ArrayList<>();
     possibleRightPairs = new ArrayList<>();
+    confirmedLeftPairs = new HashMap<>();
+    confirmedRightPairs = new HashMap<>();
   }
 
   @Override
@@ -66,21 +76,40 @@ public final class RSS14Reader extends AbstractRSSReader {
                           BitArray row,
                           Map<DecodeHintType,?> hints) throws NotFoundException {
     Pair leftPair = decodePair(row, false, rowNumber, hints);
-    addOrTally(possibleLeftPairs, leftPair);
+    Pair confirmedLeft = addOrTally(possibleLeftPairs, confirmedLeftPairs, leftPair);
     row.reverse();
     Pair rightPair = decodePair(row, true, rowNumber, hints);
-    addOrTally(possibleRightPairs, rightPair);
+    Pair confirmedRight = addOrTally(possibleRightPairs, confirmedRightPairs, rightPair);
     row.reverse();
-    int lefSize = possibleLeftPairs.size();
-    for (int i = 0; i < lefSize; i++) {
-      Pair left = possibleLeftPairs.get(i);
-      if (left.getCount() > 1) {
-        int rightSize = possibleRightPairs.size();
-        for (int j = 0; j < rightSize; j++) {
-          Pair right = possibleRightPairs.get(j);
-          if (right.getCount() > 1) {
-            if (checkChecksum(left, right)) {
-              return constructResult(left, right);
+    // Only partners of the confirmed pairs seen in this row need looking up; any other combination
+    // of confirmed pairs was already checked when the later of the two was confirmed
+    if (confirmedLeft != null) {
+      int leftValue = confirmedLeft.getFinderPattern().getValue();
+      int leftPortion = confirmedLeft.getChecksumPortion() % 79;
+      for (int rightValue = 0; rightValue < FINDER_PATTERNS.length; rightValue++) {
+        int targetCheckValue = getTargetCheckValue(leftValue, rightValue);
+        int rightChecksum = INVERSE_OF_16_MOD_79 * (targetCheckValue + 79 - leftPortion) % 79;
+        List<Pair> rights = confirmedRightPairs.get(getConfirmedKey(rightValue, rightChecksum));
+        if (rights != null) {
+          for (Pair right : rights) {
+            if (checkChecksum(confirmedLeft, right)) {
+              return constructResult(confirmedLeft, right);
+            }
+          }
+        }
+      }
+    }
+    if (confirmedRight != null) {
+      int rightValue = confirmedRight.getFinderPattern().getValue();
+      int rightPortion = 16 * confirmedRight.getChecksumPortion() % 79;
+      for (int leftValue = 0; leftValue < FINDER_PATTERNS.length; leftValue++) {
+        int targetCheckValue = getTargetCheckValue(leftValue, rightValue);
+        int leftChecksum = (targetCheckValue + 79 - rightPortion) % 79;
+        List<Pair> lefts = confirmedLeftPairs.get(getConfirmedKey(leftValue, leftChecksum));
+        if (lefts != null) {
+          for (Pair left : lefts) {
+            if (checkChecksum(left, confirmedRight)) {
+              return constructResult(left, confirmedRight);
             }
           }
         }
@@ -89,27 +118,64 @@ public final class RSS14Reader extends AbstractRSSReader {
     throw NotFoundException.getNotFoundInstance();
   }
 
-  private static void addOrTally(Collection<Pair> possiblePairs, Pair pair) {
+  /**
+   * Counts the pair, and notes it as confirmed once it has been seen often enough.
+   *
+   * @return the counted pair if it is confirmed, or {@code null}
+   */
+  private static Pair addOrTally(List<Pair> possiblePairs,
+                                 Map<Integer,List<Pair>> confirmedPairs,
+                                 Pair pair) {
     if (pair == null) {
-      return;
+      return null;
     }
-    boolean found = false;
     for (Pair other : possiblePairs) {
       if (other.getValue() == pair.getValue()) {
         other.incrementCount();
-        found = true;
-        break;
+        if (other.getCount() == 2) {
+          int key = getConfirmedKey(other.getFinderPattern().getValue(), other.getChecksumPortion());
+          List<Pair> confirmed = confirmedPairs.get(key);
+          if (confirmed == null) {
+            confirmed = new ArrayList<>(1);
+            confirmedPairs.put(key, confirmed);
+          }
+          confirmed.add(other);
+        }
+        return other.getCount() >= 2 ? other : null;
       }
     }
-    if (!found) {
-      possiblePairs.add(pair);
+    if (possiblePairs.size() >= MAX_POSSIBLE_PAIRS) {
+      // Evict the least often seen, oldest first
+      int evictIndex = 0;
+      for (int i = 1; i < possiblePairs.size(); i++) {
+        if (possiblePairs.get(i).getCount() < possiblePairs.get(evictIndex).getCount()) {
+          evictIndex = i;
+        }
+      }
+      Pair evicted = possiblePairs.remove(evictIndex);
+      if (evicted.getCount() > 1) {
+        int key = getConfirmedKey(evicted.getFinderPattern().getValue(), evicted.getChecksumPortion());
+        List<Pair> confirmed = confirmedPairs.get(key);
+        confirmed.remove(evicted);
+        if (confirmed.isEmpty()) {
+          confirmedPairs.remove(key);
+        }
+      }
     }
+    possiblePairs.add(pair);
+    return null;
+  }
+
+  private static int getConfirmedKey(int finderPatternValue, int checksumPortion) {
+    return finderPatternValue * 79 + checksumPortion % 79;
   }
 
   @Override
   public void reset() {
     possibleLeftPairs.clear();
     possibleRightPairs.clear();
+    confirmedLeftPairs.clear();
+    confirmedRightPairs.clear();
   }
 
   private static Result constructResult(Pair leftPair, Pair rightPair) {
@@ -149,15 +215,20 @@ public final class RSS14Reader extends AbstractRSSReader {
     //    (leftFPValue == 8 && rightFPValue == 0)) {
     //}
     int checkValue = (leftPair.getChecksumPortion() + 16 * rightPair.getChecksumPortion()) % 79;
-    int targetCheckValue =
-        9 * leftPair.getFinderPattern().getValue() + rightPair.getFinderPattern().getValue();
+    int targetCheckValue = getTargetCheckValue(leftPair.getFinderPattern().getValue(),
+                                               rightPair.getFinderPattern().getValue());
+    return checkValue == targetCheckValue;
+  }
+
+  private static int getTargetCheckValue(int leftFinderPatternValue, int rightFinderPatternValue) {
+    int targetCheckValue = 9 * leftFinderPatternValue + rightFinderPatternValue;
     if (targetCheckValue > 72) {
       targetCheckValue--;
     }
     if (targetCheckValue > 8) {
       targetCheckValue--;
     }
-    return checkValue == targetCheckValue;
+    return targetCheckValue;
   }
 
   private Pair decodePair(BitArray row, boolean right, int rowNumber, Map<DecodeHintType,?> hints) {
@@ -40,10 +40,12 @@ import com.google.zxing.oned.rss.RSSUtils;
 import com.google.zxing.oned.rss.expanded.decoders.AbstractExpandedDecoder;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Collections;
+import java.util.Set;
 
 /**
  * @author Pablo Orduña, University of Deusto (pablo.orduna@deusto.es)
@@ -112,10 +114,19 @@ public final class RSSExpandedReader extends AbstractRSSReader {
 
   private static final int MAX_PAIRS = 11;
 
+  // Stacked barcode can have up to 11 rows, so 25 seems reasonable enough
+  private static final int MAX_ROWS = 25;
+  // Upper bound on the row combinations checkRows() will try before giving up
+  private static final int MAX_CHECK_ROWS_STATES = 4096;
+
   private final List<ExpandedPair> pairs = new ArrayList<>(MAX_PAIRS);
   private final List<ExpandedRow> rows = new ArrayList<>();
+  // The same rows, least recently seen first
+  private final List<ExpandedRow> recentRows = new ArrayList<>();
   private final int [] startEnd = new int[2];
   private boolean startFromEven;
+  private final Set<Long> failedStates = new HashSet<>();
+  private int checkRowsStates;
 
   @Override
   public Result decodeRow(int rowNumber,
@@ -142,6 +153,7 @@ public final class RSSExpandedReader extends AbstractRSSReader {
   public void reset() {
     this.pairs.clear();
     this.rows.clear();
+    this.recentRows.clear();
   }
 
   // Not private for testing
@@ -183,15 +195,9 @@ public final class RSSExpandedReader extends AbstractRSSReader {
   }
 
   private List<ExpandedPair> checkRows(boolean reverse) {
-    // Limit number of rows we are checking
-    // We use recursive algorithm with pure complexity and don't want it to take forever
-    // Stacked barcode can have up to 11 rows, so 25 seems reasonable enough
-    if (this.rows.size() > 25) {
-      this.rows.clear();  // We will never have a chance to get result, so clear it
-      return null;
-    }
-
     this.pairs.clear();
+    this.failedStates.clear();
+    this.checkRowsStates = 0;
     if (reverse) {
       Collections.reverse(this.rows);
     }
@@ -211,9 +217,15 @@ public final class RSSExpandedReader extends AbstractRSSReader {
   }
 
   // Try to construct a valid rows sequence
-  // Recursion is used to implement backtracking
+  // Recursion is used to implement backtracking. Whether the search can succeed from some point
+  // only depends on a few properties of the rows collected so far (see getStateKey()), so states
+  // which already failed are remembered and not explored again. Even so, the total number of
+  // states tried is capped.
   private List<ExpandedPair> checkRows(List<ExpandedRow> collectedRows, int currentRow) throws NotFoundException {
     for (int i = currentRow; i < rows.size(); i++) {
+      if (++this.checkRowsStates > MAX_CHECK_ROWS_STATES) {
+        throw NotFoundException.getNotFoundInstance();
+      }
       ExpandedRow row = rows.get(i);
       this.pairs.clear();
       int size = collectedRows.size();
@@ -230,6 +242,11 @@ public final class RSSExpandedReader extends AbstractRSSReader {
         return this.pairs;
       }
 
+      long stateKey = getStateKey(this.pairs, i + 1);
+      if (this.failedStates.contains(stateKey)) {
+        continue;
+      }
+
       List<ExpandedRow> rs = new ArrayList<>();
       rs.addAll(collectedRows);
       rs.add(row);
@@ -238,12 +255,63 @@ public final class RSSExpandedReader extends AbstractRSSReader {
         return checkRows(rs, i + 1);
       } catch (NotFoundException e) {
         // We failed, try the next candidate
+        this.failedStates.add(stateKey);
       }
     }
 
     throw NotFoundException.getNotFoundInstance();
   }
 
+  /**
+   * Summarizes everything about a valid prefix of pairs which affects whether more rows can
+   * complete it: which finder pattern sequences it's still a prefix of, its length, the
+   * check character and the checksum of the data characters so far.
+   */
+  private static long getStateKey(List<ExpandedPair> pairs, int nextRow) {
+    int numPairs = pairs.size();
+    long sequences = 0;
+    for (int i = 0; i < FINDER_PATTERN_SEQUENCES.length; i++) {
+      int[] sequence = FINDER_PATTERN_SEQUENCES[i];
+      if (numPairs > sequence.length) {
+        continue;
+      }
+      boolean matches = true;
+      for (int j = 0; j < numPairs; j++) {
+        if (pairs.get(j).getFinderPattern().getValue() != sequence[j]) {
+          matches = false;
+          break;
+        }
+      }
+      if (matches) {
+        sequences |= 1 << i;
+      }
+    }
+
+    ExpandedPair firstPair = pairs.get(0);
+    DataCharacter firstCharacter = firstPair.getRightChar();
+    int checksum = firstCharacter == null ? 0 : firstCharacter.getChecksumPortion();
+    int s = firstCharacter == null ? 0 : 2;
+    for (int i = 1; i < numPairs; i++) {
+      ExpandedPair currentPair = pairs.get(i);
+      checksum += currentPair.getLeftChar().getChecksumPortion();
+      s++;
+      DataCharacter currentRightChar = currentPair.getRightChar();
+      if (currentRightChar != null) {
+        checksum += currentRightChar.getChecksumPortion();
+        s++;
+      }
+    }
+    checksum %= 211;
+
+    long key = firstPair.getLeftChar().getValue();
+    key = (key << 8) | checksum;
+    key = (key << 6) | s;
+    key = (key << 4) | numPairs;
+    key = (key << 10) | sequences;
+    key = (key << 8) | nextRow;
+    return key;
+  }
+
   // Whether the pairs form a valid find pattern seqience,
   // either complete or a prefix
   private static boolean isValidSequence(List<ExpandedPair> pairs) {
@@ -282,7 +350,12 @@ public final class RSSExpandedReader extends AbstractRSSReader {
       prevIsSame = erow.isEquivalent(this.pairs);
       insertPos++;
     }
-    if (nextIsSame || prevIsSame) {
+    if (nextIsSame) {
+      touchRow(this.rows.get(insertPos));
+      return;
+    }
+    if (prevIsSame) {
+      touchRow(this.rows.get(insertPos - 1));
       return;
     }
 
@@ -295,9 +368,47 @@ public final class RSSExpandedReader extends AbstractRSSReader {
       return;
     }
 
-    this.rows.add(insertPos, new ExpandedRow(this.pairs, rowNumber, wasReversed));
+    ExpandedRow newRow = new ExpandedRow(this.pairs, rowNumber, wasReversed);
+    this.rows.add(insertPos, newRow);
+    this.recentRows.add(newRow);
 
     removePartialRows(this.pairs, this.rows);
+
+    // Keep recentRows in step with rows, then evict the rows not seen for longest
+    for (Iterator<ExpandedRow> iterator = this.recentRows.iterator(); iterator.hasNext();) {
+      if (!containsRow(this.rows, iterator.next())) {
+        iterator.remove();
+      }
+    }
+    while (this.rows.size() > MAX_ROWS) {
+      ExpandedRow evicted = this.recentRows.remove(0);
+      for (Iterator<ExpandedRow> iterator = this.rows.iterator(); iterator.hasNext();) {
+        if (iterator.next() == evicted) {
+          iterator.remove();
+          break;
+        }
+      }
+    }
+  }
+
+  // Marks a row as just seen, so it is the last to be evicted
+  private void touchRow(ExpandedRow row) {
+    for (Iterator<ExpandedRow> iterator = this.recentRows.iterator(); iterator.hasNext();) {
+      if (iterator.next() == row) {
+        iterator.remove();
+        this.recentRows.add(row);
+        return;
+      }
+    }
+  }
+
+  private static boolean containsRow(Iterable<ExpandedRow> rows, ExpandedRow row) {
+    for (ExpandedRow r : rows) {
+      if (r == row) {
+        return true;
+      }
+    }
+    return false;
   }
 
   // Remove all the rows that contains only specified pairs 
@@ -21,6 +21,7 @@ import com.google.zxing.EncodeHintType;
 import com.google.zxing.Writer;
 import com.google.zxing.WriterException;
 import com.google.zxing.common.BitMatrix;
+import com.google.zxing.pdf417.encoder.BarcodeMatrix;
 import com.google.zxing.pdf417.encoder.Compaction;
 import com.google.zxing.pdf417.encoder.Dimensions;
 import com.google.zxing.pdf417.encoder.PDF417;
@@ -107,15 +108,18 @@ public final class PDF417Writer implements Writer {
     encoder.generateBarcodeLogic(contents, errorCorrectionLevel);
 
     int aspectRatio = 4;
-    byte[][] originalScale = encoder.getBarcodeMatrix().getScaledMatrix(1, aspectRatio);
-    boolean rotated = false;
-    if ((height > width) ^ (originalScale[0].length < originalScale.length)) {
-      originalScale = rotateArray(originalScale);
-      rotated = true;
+    BarcodeMatrix barcodeMatrix = encoder.getBarcodeMatrix();
+    int originalWidth = barcodeMatrix.getWidth();
+    int originalHeight = barcodeMatrix.getHeight() * aspectRatio;
+    boolean rotated = (height > width) ^ (originalWidth < originalHeight);
+    if (rotated) {
+      int temp = originalWidth;
+      originalWidth = originalHeight;
+      originalHeight = temp;
     }
 
-    int scaleX = width / originalScale[0].length;
-    int scaleY = height / originalScale.length;
+    int scaleX = width / originalWidth;
+    int scaleY = height / originalHeight;
 
     int scale;
     if (scaleX < scaleY) {
@@ -123,54 +127,11 @@ public final class PDF417Writer implements Writer {
     } else {
       scale = scaleY;
     }
-
-    if (scale > 1) {
-      byte[][] scaledMatrix =
-          encoder.getBarcodeMatrix().getScaledMatrix(scale, scale * aspectRatio);
-      if (rotated) {
-        scaledMatrix = rotateArray(scaledMatrix);
-      }
-      return bitMatrixFrombitArray(scaledMatrix, margin);
+    if (scale < 1) {
+      scale = 1;
     }
-    return bitMatrixFrombitArray(originalScale, margin);
-  }
 
-  /**
-   * This takes an array holding the values of the PDF 417
-   *
-   * @param input a byte array of information with 0 is black, and 1 is white
-   * @param margin border around the barcode
-   * @return BitMatrix of the input
-   */
-  private static BitMatrix bitMatrixFrombitArray(byte[][] input, int margin) {
-    // Creates the bitmatrix with extra space for whitespace
-    BitMatrix output = new BitMatrix(input[0].length + 2 * margin, input.length + 2 * margin);
-    output.clear();
-    for (int y = 0, yOutput = output.getHeight() - margin - 1; y < input.length; y++, yOutput--) {
-      for (int x = 0; x < input[0].length; x++) {
-        // Zero is white in the bytematrix
-        if (input[y][x] == 1) {
-          output.set(x + margin, yOutput);
-        }
-      }
-    }
-    return output;
-  }
-
-  /**
-   * Takes and rotates the it 90 degrees
-   */
-  private static byte[][] rotateArray(byte[][] bitarray) {
-    byte[][] temp = new byte[bitarray[0].length][bitarray.length];
-    for (int ii = 0; ii < bitarray.length; ii++) {
-      // This makes the direction consistent on screen when rotating the
-      // screen;
-      int inverseii = bitarray.length - ii - 1;
-      for (int jj = 0; jj < bitarray[0].length; jj++) {
-        temp[jj][inverseii] = bitarray[ii][jj];
-      }
-    }
-    return temp;
+    return barcodeMatrix.toBitMatrix(scale, scale * aspectRatio, rotated, margin);
   }
 
 }
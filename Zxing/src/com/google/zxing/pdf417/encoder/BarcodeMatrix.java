@@ -16,6 +16,9 @@
 
 package com.google.zxing.pdf417.encoder;
 
+import com.google.zxing.common.BitArray;
+import com.google.zxing.common.BitMatrix;
+
 /**
  * Holds all of the information for a barcode in a format where it can be easily accessable
  *
@@ -34,11 +37,12 @@ public final class BarcodeMatrix {
    */
   BarcodeMatrix(int height, int width) {
     matrix = new BarcodeRow[height];
+    // Each row has start, left row indicator, data, right row indicator and stop codewords
+    this.width = (width + 4) * 17 + 1;
     //Initializes the array to the correct width
     for (int i = 0, matrixLength = matrix.length; i < matrixLength; i++) {
-      matrix[i] = new BarcodeRow((width + 4) * 17 + 1);
+      matrix[i] = new BarcodeRow(this.width);
     }
-    this.width = width * 17;
     this.height = height;
     this.currentRow = -1;
   }
@@ -61,6 +65,20 @@ public final class BarcodeMatrix {
     return matrix[currentRow];
   }
 
+  /**
+   * @return width of the barcode in modules
+   */
+  public int getWidth() {
+    return width;
+  }
+
+  /**
+   * @return height of the barcode in rows
+   */
+  public int getHeight() {
+    return height;
+  }
+
   public byte[][] getMatrix() {
     return getScaledMatrix(1, 1);
   }
@@ -72,11 +90,68 @@ public final class BarcodeMatrix {
    */
 
   public byte[][] getScaledMatrix(int xScale, int yScale) {
-    byte[][] matrixOut = new byte[height * yScale][width * xScale];
+    byte[][] matrixOut = new byte[height * yScale][];
     int yMax = height * yScale;
     for (int i = 0; i < yMax; i++) {
       matrixOut[yMax - i - 1] = matrix[i / yScale].getScaledRow(xScale);
     }
     return matrixOut;
   }
+
+  /**
+   * Renders the barcode into a {@link BitMatrix}, black modules being set, without going through
+   * {@link #getScaledMatrix(int, int)}. Each scaled row of output is filled a run of black modules
+   * at a time and copied to all the rows it covers.
+   *
+   * @param xScale width of a module in pixels, before any rotation
+   * @param yScale height of a row in pixels, before any rotation
+   * @param rotated whether to turn the barcode 90 degrees counterclockwise, so that its first row
+   *  is on the left and its start pattern at the bottom
+   * @param margin white space to leave on every side, in pixels
+   * @return the rendered barcode
+   */
+  public BitMatrix toBitMatrix(int xScale, int yScale, boolean rotated, int margin) {
+    int scaledWidth = width * xScale;
+    int scaledHeight = height * yScale;
+    BitMatrix output;
+    if (rotated) {
+      output = new BitMatrix(scaledHeight + 2 * margin, scaledWidth + 2 * margin);
+      // Module x of every row lands in the same output rows, one after another from the left
+      BitArray outputRow = new BitArray(output.getWidth());
+      for (int x = 0; x < width; x++) {
+        outputRow.clear();
+        boolean isBlank = true;
+        for (int y = 0; y < height; y++) {
+          if (matrix[y].getRow().get(x)) {
+            outputRow.setRange(margin + y * yScale, margin + (y + 1) * yScale);
+            isBlank = false;
+          }
+        }
+        if (!isBlank) {
+          int outputY = margin + scaledWidth - (x + 1) * xScale;
+          for (int i = 0; i < xScale; i++) {
+            output.setRow(outputY + i, outputRow);
+          }
+        }
+      }
+    } else {
+      output = new BitMatrix(scaledWidth + 2 * margin, scaledHeight + 2 * margin);
+      BitArray outputRow = new BitArray(output.getWidth());
+      for (int y = 0; y < height; y++) {
+        outputRow.clear();
+        BitArray row = matrix[y].getRow();
+        int start = row.getNextSet(0);
+        while (start < width) {
+          int end = row.getNextUnset(start);
+          outputRow.setRange(margin + start * xScale, margin + end * xScale);
+          start = row.getNextSet(end);
+        }
+        int outputY = margin + y * yScale;
+        for (int i = 0; i < yScale; i++) {
+          output.setRow(outputY + i, outputRow);
+        }
+      }
+    }
+    return output;
+  }
 }
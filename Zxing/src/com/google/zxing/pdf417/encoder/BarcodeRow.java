@@ -16,12 +16,14 @@
 
 package com.google.zxing.pdf417.encoder;
 
+import com.google.zxing.common.BitArray;
+
 /**
  * @author Jacob Haynes
  */
 final class BarcodeRow {
 
-  private final byte[] row;
+  private final BitArray row;
   //A tacker for position in the bar
   private int currentLocation;
 
@@ -29,7 +31,7 @@ final class BarcodeRow {
    * Creates a Barcode row of the width
    */
   BarcodeRow(int width) {
-    this.row = new byte[width];
+    this.row = new BitArray(width);
     currentLocation = 0;
   }
 
@@ -37,10 +39,10 @@ final class BarcodeRow {
    * Sets a specific location in the bar
    *
    * @param x The location in the bar
-   * @param value Black if true, white if false;
+   * @param value Black if 1, white if 0
    */
   void set(int x, byte value) {
-    row[x] = value;
+    set(x, value == 1);
   }
 
   /**
@@ -50,7 +52,9 @@ final class BarcodeRow {
    * @param black Black if true, white if false;
    */
   void set(int x, boolean black) {
-    row[x] = (byte) (black ? 1 : 0);
+    if (row.get(x) != black) {
+      row.flip(x);
+    }
   }
 
   /**
@@ -58,16 +62,19 @@ final class BarcodeRow {
    * @param width How many spots wide the bar is.
    */
   void addBar(boolean black, int width) {
-    for (int ii = 0; ii < width; ii++) {
-      set(currentLocation++, black);
+    // Bars are added left to right to a row which starts out white
+    if (black) {
+      row.setRange(currentLocation, currentLocation + width);
     }
+    currentLocation += width;
   }
 
-  /*
-  byte[] getRow() {
+  /**
+   * @return the modules of the row, packed one bit each, set where black
+   */
+  BitArray getRow() {
     return row;
   }
-   */
 
   /**
    * This function scales the row
@@ -76,9 +83,11 @@ final class BarcodeRow {
    * @return the scaled row
    */
   byte[] getScaledRow(int scale) {
-    byte[] output = new byte[row.length * scale];
+    byte[] output = new byte[row.getSize() * scale];
     for (int i = 0; i < output.length; i++) {
-      output[i] = row[i / scale];
+      if (row.get(i / scale)) {
+        output[i] = 1;
+      }
     }
     return output;
   }
@@ -557,6 +557,15 @@ public final class PDF417 {
     return r;
   }
 
+  /**
+   * @return ratio of width to height of the symbol with the given number of columns, in the same
+   *  terms as {@link #PREFERRED_RATIO}
+   */
+  private static float getRatio(int m, int k, int c) {
+    int rows = calculateNumberOfRows(m, k, c);
+    return ((17 * c + 69) * DEFAULT_MODULE_WIDTH) / (rows * HEIGHT);
+  }
+
   /**
    * Calculates the number of pad codewords as described in 4.9.2 of ISO/IEC 15438:2001(E).
    *
@@ -688,30 +697,38 @@ public final class PDF417 {
    * @return dimension object containing cols as width and rows as height
    */
   private int[] determineDimensions(int sourceCodeWords, int errorCorrectionCodeWords) throws WriterException {
-    float ratio = 0.0f;
     int[] dimension = null;
 
-    for (int cols = minCols; cols <= maxCols; cols++) {
-
-      int rows = calculateNumberOfRows(sourceCodeWords, errorCorrectionCodeWords, cols);
-
-      if (rows < minRows) {
-        break;
+    // Rows never increase as columns are added, so the ratio of width to height grows with the
+    // columns, and the ratio closest to the preferred one is on either side of where it crosses
+    // it. Solve for that instead of trying every number of columns.
+    int codewords = sourceCodeWords + errorCorrectionCodeWords + 1;
+    // Columns for which rows = ceil(codewords / cols) is from minRows to maxRows
+    int firstCols =
+        maxRows < 1 ? Integer.MAX_VALUE : Math.max(minCols, (codewords + maxRows - 1) / maxRows);
+    int lastCols = minRows <= 1 ? maxCols : Math.min(maxCols, (codewords - 1) / (minRows - 1));
+    if (firstCols <= lastCols) {
+      // With rows = codewords / cols, the ratio is preferred where 17 * cols^2 + 69 * cols = target
+      double target = PREFERRED_RATIO * HEIGHT * codewords / DEFAULT_MODULE_WIDTH;
+      int cols = (int) ((Math.sqrt(69.0 * 69.0 + 4.0 * 17.0 * target) - 69.0) / (2.0 * 17.0));
+      cols = Math.max(firstCols, Math.min(lastCols, cols));
+      // Rows are really rounded up, so the ratio may cross a little later; find the last number of
+      // columns at or below the preferred ratio, if any
+      int m = sourceCodeWords;
+      int k = errorCorrectionCodeWords;
+      while (cols < lastCols && getRatio(m, k, cols + 1) <= PREFERRED_RATIO) {
+        cols++;
       }
-
-      if (rows > maxRows) {
-        continue;
+      while (cols >= firstCols && getRatio(m, k, cols) > PREFERRED_RATIO) {
+        cols--;
       }
-
-      float newRatio = ((17 * cols + 69) * DEFAULT_MODULE_WIDTH) / (rows * HEIGHT);
-
-      // ignore if previous ratio is closer to preferred ratio
-      if (dimension != null && Math.abs(newRatio - PREFERRED_RATIO) > Math.abs(ratio - PREFERRED_RATIO)) {
-        continue;
+      // Take the closer of it and the next, the latter if equally close, as a search would
+      if (cols < lastCols && (cols < firstCols ||
+          Math.abs(getRatio(m, k, cols + 1) - PREFERRED_RATIO) <=
+          Math.abs(getRatio(m, k, cols) - PREFERRED_RATIO))) {
+        cols++;
       }
-
-      ratio = newRatio;
-      dimension = new int[] {cols, rows};
+      dimension = new int[] {cols, calculateNumberOfRows(m, k, cols)};
     }
 
      // Handle case when min values were larger than necessary
@@ -192,8 +192,24 @@ final class PDF417HighLevelEncoder {
 
     } else {
       int encodingMode = TEXT_COMPACTION; //Default mode, see 4.4.2.1
+      // How far each run of digits, text or binary goes from each position, so that every choice
+      // of compaction below is made without scanning ahead again
+      int[] digitCounts = new int[len + 1];
+      int[] textEnds = new int[len + 1];
+      int[] binaryEnds = new int[len + 1];
+      textEnds[len] = len;
+      binaryEnds[len] = len;
+      for (int i = len - 1; i >= 0; i--) {
+        char ch = msg.charAt(i);
+        digitCounts[i] = isDigit(ch) ? digitCounts[i + 1] + 1 : 0;
+        // Text and binary runs end at a run of 13 or more digits, for numeric compaction
+        boolean numeric = digitCounts[i] >= 13;
+        textEnds[i] = numeric || !isText(ch) ? i : textEnds[i + 1];
+        binaryEnds[i] = numeric ? i : binaryEnds[i + 1];
+      }
+      CharsetEncoder encoder = encoding.newEncoder();
       while (p < len) {
-        int n = determineConsecutiveDigitCount(msg, p);
+        int n = digitCounts[p];
         if (n >= 13) {
           sb.append((char) LATCH_TO_NUMERIC);
           encodingMode = NUMERIC_COMPACTION;
@@ -201,7 +217,7 @@ final class PDF417HighLevelEncoder {
           encodeNumeric(msg, p, n, sb);
           p += n;
         } else {
-          int t = determineConsecutiveTextCount(msg, p);
+          int t = textEnds[p] - p;
           if (t >= 5 || n == len) {
             if (encodingMode != TEXT_COMPACTION) {
               sb.append((char) LATCH_TO_TEXT);
@@ -211,7 +227,7 @@ final class PDF417HighLevelEncoder {
             textSubMode = encodeText(msg, p, t, sb, textSubMode);
             p += t;
           } else {
-            int b = determineConsecutiveBinaryCount(msg, p, encoding);
+            int b = determineConsecutiveBinaryCount(msg, p, binaryEnds[p], encoder);
             if (b == 0) {
               b = 1;
             }
@@ -462,105 +478,28 @@ final class PDF417HighLevelEncoder {
     return ch == '\t' || ch == '\n' || ch == '\r' || (ch >= 32 && ch <= 126);
   }
 
-  /**
-   * Determines the number of consecutive characters that are encodable using numeric compaction.
-   *
-   * @param msg      the message
-   * @param startpos the start position within the message
-   * @return the requested character count
-   */
-  private static int determineConsecutiveDigitCount(CharSequence msg, int startpos) {
-    int count = 0;
-    int len = msg.length();
-    int idx = startpos;
-    if (idx < len) {
-      char ch = msg.charAt(idx);
-      while (isDigit(ch) && idx < len) {
-        count++;
-        idx++;
-        if (idx < len) {
-          ch = msg.charAt(idx);
-        }
-      }
-    }
-    return count;
-  }
-
-  /**
-   * Determines the number of consecutive characters that are encodable using text compaction.
-   *
-   * @param msg      the message
-   * @param startpos the start position within the message
-   * @return the requested character count
-   */
-  private static int determineConsecutiveTextCount(CharSequence msg, int startpos) {
-    int len = msg.length();
-    int idx = startpos;
-    while (idx < len) {
-      char ch = msg.charAt(idx);
-      int numericCount = 0;
-      while (numericCount < 13 && isDigit(ch) && idx < len) {
-        numericCount++;
-        idx++;
-        if (idx < len) {
-          ch = msg.charAt(idx);
-        }
-      }
-      if (numericCount >= 13) {
-        return idx - startpos - numericCount;
-      }
-      if (numericCount > 0) {
-        //Heuristic: All text-encodable chars or digits are binary encodable
-        continue;
-      }
-      ch = msg.charAt(idx);
-
-      //Check if character is encodable
-      if (!isText(ch)) {
-        break;
-      }
-      idx++;
-    }
-    return idx - startpos;
-  }
-
   /**
    * Determines the number of consecutive characters that are encodable using binary compaction.
    *
    * @param msg      the message
    * @param startpos the start position within the message
-   * @param encoding the charset used to convert the message to a byte array
+   * @param endpos   the position of the next run of digits long enough for numeric compaction,
+   *                 or the end of the message
+   * @param encoder  encodes the message to a byte array
    * @return the requested character count
    */
-  private static int determineConsecutiveBinaryCount(String msg, int startpos, Charset encoding)
+  private static int determineConsecutiveBinaryCount(CharSequence msg,
+                                                     int startpos,
+                                                     int endpos,
+                                                     CharsetEncoder encoder)
       throws WriterException {
-    final CharsetEncoder encoder = encoding.newEncoder();
-    int len = msg.length();
-    int idx = startpos;
-    while (idx < len) {
+    for (int idx = startpos; idx < endpos; idx++) {
       char ch = msg.charAt(idx);
-      int numericCount = 0;
-
-      while (numericCount < 13 && isDigit(ch)) {
-        numericCount++;
-        //textCount++;
-        int i = idx + numericCount;
-        if (i >= len) {
-          break;
-        }
-        ch = msg.charAt(i);
-      }
-      if (numericCount >= 13) {
-        return idx - startpos;
-      }
-      ch = msg.charAt(idx);
-
       if (!encoder.canEncode(ch)) {
         throw new WriterException("Non-encodable character detected: " + ch + " (Unicode: " + (int) ch + ')');
       }
-      idx++;
     }
-    return idx - startpos;
+    return endpos - startpos;
   }
 
   private static void encodingECI(int eci, StringBuilder sb) throws WriterException {
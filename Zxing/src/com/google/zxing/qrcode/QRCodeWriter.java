@@ -20,6 +20,7 @@ import com.google.zxing.BarcodeFormat;
 import com.google.zxing.EncodeHintType;
 import com.google.zxing.Writer;
 import com.google.zxing.WriterException;
+import com.google.zxing.common.BitArray;
 import com.google.zxing.common.BitMatrix;
 import com.google.zxing.qrcode.encoder.ByteMatrix;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
@@ -102,12 +103,28 @@ public final class QRCodeWriter implements Writer {
     int topPadding = (outputHeight - (inputHeight * multiple)) / 2;
 
     BitMatrix output = new BitMatrix(outputWidth, outputHeight);
+    byte[][] array = input.getArray();
+    BitArray row = new BitArray(outputWidth);
 
     for (int inputY = 0, outputY = topPadding; inputY < inputHeight; inputY++, outputY += multiple) {
-      // Write the contents of this row of the barcode
-      for (int inputX = 0, outputX = leftPadding; inputX < inputWidth; inputX++, outputX += multiple) {
-        if (input.get(inputX, inputY) == 1) {
-          output.setRegion(outputX, outputY, multiple, multiple);
+      // Scale this row of the barcode once, filling each run of black modules at a time, then copy
+      // it into all the output rows it covers
+      byte[] inputRow = array[inputY];
+      row.clear();
+      boolean isBlank = true;
+      for (int inputX = 0; inputX < inputWidth; inputX++) {
+        if (inputRow[inputX] == 1) {
+          int start = inputX;
+          while (inputX + 1 < inputWidth && inputRow[inputX + 1] == 1) {
+            inputX++;
+          }
+          row.setRange(leftPadding + start * multiple, leftPadding + (inputX + 1) * multiple);
+          isBlank = false;
+        }
+      }
+      if (!isBlank) {
+        for (int y = outputY; y < outputY + multiple; y++) {
+          output.setRow(y, row);
         }
       }
     }
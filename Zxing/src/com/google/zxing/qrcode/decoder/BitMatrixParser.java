@@ -19,11 +19,20 @@ package com.google.zxing.qrcode.decoder;
 import com.google.zxing.FormatException;
 import com.google.zxing.common.BitMatrix;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * @author Sean Owen
  */
 final class BitMatrixParser {
 
+  /**
+   * For each version, the (x, y) position of every data and error correction bit, in the order
+   * they're read, packed as (y << 8) | x. Built the first time a version is read.
+   */
+  private static final AtomicReferenceArray<int[]> CODEWORD_BIT_POSITIONS =
+      new AtomicReferenceArray<>(40);
+
   private final BitMatrix bitMatrix;
   private Version parsedVersion;
   private FormatInformation parsedFormatInfo;
@@ -161,13 +170,40 @@ final class BitMatrixParser {
     int dimension = bitMatrix.getHeight();
     dataMask.unmaskBitMatrix(bitMatrix, dimension);
 
-    BitMatrix functionPattern = version.buildFunctionPattern();
+    int[] bitPositions = getCodewordBitPositions(version);
 
-    boolean readingUp = true;
     byte[] result = new byte[version.getTotalCodewords()];
-    int resultOffset = 0;
-    int currentByte = 0;
     int bitsRead = 0;
+    for (int resultOffset = 0; resultOffset < result.length; resultOffset++) {
+      int currentByte = 0;
+      for (int b = 0; b < 8; b++) {
+        int position = bitPositions[bitsRead++];
+        currentByte <<= 1;
+        if (bitMatrix.get(position & 0xFF, position >>> 8)) {
+          currentByte |= 1;
+        }
+      }
+      result[resultOffset] = (byte) currentByte;
+    }
+    return result;
+  }
+
+  /**
+   * Finds the positions of the codeword bits in a QR Code of the given version. Threads finding
+   * those of the same version at once each find them, and all then share the first stored.
+   */
+  private static int[] getCodewordBitPositions(Version version) throws FormatException {
+    int index = version.getVersionNumber() - 1;
+    int[] bitPositions = CODEWORD_BIT_POSITIONS.get(index);
+    if (bitPositions != null) {
+      return bitPositions;
+    }
+
+    int dimension = version.getDimensionForVersion();
+    BitMatrix functionPattern = version.buildFunctionPattern();
+    bitPositions = new int[version.getTotalCodewords() * 8];
+    int bitsRead = 0;
+    boolean readingUp = true;
     // Read columns in pairs, from right to left
     for (int j = dimension - 1; j > 0; j -= 2) {
       if (j == 6) {
@@ -179,29 +215,21 @@ final class BitMatrixParser {
       for (int count = 0; count < dimension; count++) {
         int i = readingUp ? dimension - 1 - count : count;
         for (int col = 0; col < 2; col++) {
-          // Ignore bits covered by the function pattern
-          if (!functionPattern.get(j - col, i)) {
-            // Read a bit
-            bitsRead++;
-            currentByte <<= 1;
-            if (bitMatrix.get(j - col, i)) {
-              currentByte |= 1;
-            }
-            // If we've made a whole byte, save it off
-            if (bitsRead == 8) {
-              result[resultOffset++] = (byte) currentByte;
-              bitsRead = 0;
-              currentByte = 0;
-            }
+          // Ignore bits covered by the function pattern, and remainder bits
+          if (!functionPattern.get(j - col, i) && bitsRead < bitPositions.length) {
+            bitPositions[bitsRead++] = (i << 8) | (j - col);
           }
         }
       }
       readingUp ^= true; // readingUp = !readingUp; // switch directions
     }
-    if (resultOffset != version.getTotalCodewords()) {
+    if (bitsRead != bitPositions.length) {
       throw FormatException.getFormatInstance();
     }
-    return result;
+    if (!CODEWORD_BIT_POSITIONS.compareAndSet(index, null, bitPositions)) {
+      bitPositions = CODEWORD_BIT_POSITIONS.get(index);
+    }
+    return bitPositions;
   }
 
   /**
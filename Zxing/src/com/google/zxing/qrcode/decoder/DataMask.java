@@ -18,6 +18,8 @@ package com.google.zxing.qrcode.decoder;
 
 import com.google.zxing.common.BitMatrix;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * <p>Encapsulates data masks for the data bits in a QR code, per ISO 18004:2006 6.8. Implementations
  * of this class can un-mask a raw BitMatrix. For simplicity, they will unmask the entire BitMatrix,
@@ -45,6 +47,11 @@ abstract class DataMask {
       new DataMask111(),
   };
 
+  /**
+   * Mask bits for each QR Code version, 1 to 40, built the first time they're needed.
+   */
+  private final AtomicReferenceArray<BitMatrix> masksByVersion = new AtomicReferenceArray<>(40);
+
   private DataMask() {
   }
 
@@ -56,6 +63,13 @@ abstract class DataMask {
    * @param dimension dimension of QR Code, represented by bits, being unmasked
    */
   final void unmaskBitMatrix(BitMatrix bits, int dimension) {
+    if (bits.getWidth() == dimension && bits.getHeight() == dimension) {
+      BitMatrix mask = getMask(dimension);
+      if (mask != null) {
+        bits.xor(mask);
+        return;
+      }
+    }
     for (int i = 0; i < dimension; i++) {
       for (int j = 0; j < dimension; j++) {
         if (isMasked(i, j)) {
@@ -65,6 +79,36 @@ abstract class DataMask {
     }
   }
 
+  /**
+   * Builds the mask the first time it's needed. Threads building the same mask at once each build
+   * it, and all then share the first one stored.
+   *
+   * @return all the bits this mask flips in a QR Code of the given dimension, or {@code null} if
+   *  the dimension isn't that of any version
+   */
+  private BitMatrix getMask(int dimension) {
+    int versionNumber = (dimension - 17) / 4;
+    if (versionNumber < 1 || versionNumber > masksByVersion.length() ||
+        (dimension - 17) % 4 != 0) {
+      return null;
+    }
+    BitMatrix mask = masksByVersion.get(versionNumber - 1);
+    if (mask == null) {
+      mask = new BitMatrix(dimension);
+      for (int i = 0; i < dimension; i++) {
+        for (int j = 0; j < dimension; j++) {
+          if (isMasked(i, j)) {
+            mask.set(j, i);
+          }
+        }
+      }
+      if (!masksByVersion.compareAndSet(versionNumber - 1, null, mask)) {
+        mask = masksByVersion.get(versionNumber - 1);
+      }
+    }
+    return mask;
+  }
+
   abstract boolean isMasked(int i, int j);
 
   /**
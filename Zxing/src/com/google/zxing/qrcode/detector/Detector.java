@@ -39,10 +39,20 @@ import java.util.Map;
 public class Detector {
 
   private final BitMatrix image;
+  private final GridSampler sampler;
   private ResultPointCallback resultPointCallback;
 
   public Detector(BitMatrix image) {
+    this(image, GridSampler.getInstance());
+  }
+
+  /**
+   * @param image image to search
+   * @param sampler samples the grid of modules once the code is found
+   */
+  public Detector(BitMatrix image, GridSampler sampler) {
     this.image = image;
+    this.sampler = sampler;
   }
 
   protected final BitMatrix getImage() {
@@ -183,11 +193,10 @@ public class Detector {
         bottomLeft.getY());
   }
 
-  private static BitMatrix sampleGrid(BitMatrix image,
-                                      PerspectiveTransform transform,
-                                      int dimension) throws NotFoundException {
+  private BitMatrix sampleGrid(BitMatrix image,
+                               PerspectiveTransform transform,
+                               int dimension) throws NotFoundException {
 
-    GridSampler sampler = GridSampler.getInstance();
     return sampler.sampleGrid(image, dimension, dimension, transform);
   }
 
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import java.util.Arrays;
+
+/**
+ * The dark cells of a {@link ByteMatrix}, packed 64 to a {@code long} both by row and by column,
+ * so that {@link MaskUtil} can score whole words of cells at a time. Bit x of row y is bit
+ * {@code x & 63} of {@code getRow(y)[x >> 6]}, and likewise for columns. Bits past the end of a
+ * row or column are 0.
+ */
+final class BitPackedMatrix {
+
+  private final long[][] rows;
+  private final long[][] columns;
+  private final int width;
+  private final int height;
+
+  BitPackedMatrix(int width, int height) {
+    this.rows = new long[height][(width + 63) >> 6];
+    this.columns = new long[width][(height + 63) >> 6];
+    this.width = width;
+    this.height = height;
+  }
+
+  int getWidth() {
+    return width;
+  }
+
+  int getHeight() {
+    return height;
+  }
+
+  long[] getRow(int y) {
+    return rows[y];
+  }
+
+  long[] getColumn(int x) {
+    return columns[x];
+  }
+
+  /**
+   * Sets the cells to those of the given matrix, of the same size; cells with value 1 are dark.
+   */
+  void set(ByteMatrix matrix) {
+    for (long[] row : rows) {
+      Arrays.fill(row, 0L);
+    }
+    for (long[] column : columns) {
+      Arrays.fill(column, 0L);
+    }
+    byte[][] array = matrix.getArray();
+    for (int y = 0; y < height; y++) {
+      byte[] arrayY = array[y];
+      long[] row = rows[y];
+      long yBit = 1L << (y & 63);
+      int yWord = y >> 6;
+      for (int x = 0; x < width; x++) {
+        if (arrayY[x] == 1) {
+          row[x >> 6] |= 1L << (x & 63);
+          columns[x][yWord] |= yBit;
+        }
+      }
+    }
+  }
+
+}
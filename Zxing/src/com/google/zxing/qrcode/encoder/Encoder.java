@@ -29,7 +29,12 @@ import com.google.zxing.qrcode.decoder.Version;
 import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
@@ -49,12 +54,15 @@ public final class Encoder {
 
   static final String DEFAULT_BYTE_MODE_ENCODING = "ISO-8859-1";
 
+  // Ranges of versions whose character count fields have the same number of bits
+  private static final int[][] VERSION_RANGES = {{1, 9}, {10, 26}, {27, 40}};
+
   private Encoder() {
   }
 
   // The mask penalty calculation is complicated.  See Table 21 of JISX0510:2004 (p.45) for details.
   // Basically it applies four rules and summate all penalties.
-  private static int calculateMaskPenalty(ByteMatrix matrix) {
+  private static int calculateMaskPenalty(BitPackedMatrix matrix) {
     return MaskUtil.applyMaskPenaltyRule1(matrix)
         + MaskUtil.applyMaskPenaltyRule2(matrix)
         + MaskUtil.applyMaskPenaltyRule3(matrix)
@@ -82,53 +90,87 @@ public final class Encoder {
       encoding = hints.get(EncodeHintType.CHARACTER_SET).toString();
     }
 
-    // Pick an encoding mode appropriate for the content. Note that this will not attempt to use
-    // multiple modes / segments even if that were more efficient. Twould be nice.
-    Mode mode = chooseMode(content, encoding);
-
-    // This will store the header information, like mode and
-    // length, as well as "header" segments like an ECI segment.
-    BitArray headerBits = new BitArray();
-
-    // Append ECI segment if applicable
-    if (mode == Mode.BYTE && !DEFAULT_BYTE_MODE_ENCODING.equals(encoding)) {
-      CharacterSetECI eci = CharacterSetECI.getCharacterSetECIByName(encoding);
-      if (eci != null) {
-        appendECI(eci, headerBits);
+    Mode mode;
+    Version version;
+    BitArray headerAndDataBits;
+    if (hints != null && hints.containsKey(EncodeHintType.QR_COMPACT) &&
+        Boolean.valueOf(hints.get(EncodeHintType.QR_COMPACT).toString())) {
+      // Split the content into segments of the modes taking the fewest bits. Those depend on the
+      // size of the character count fields, so try each range of versions sharing them in turn.
+      MinimalEncoder minimalEncoder = new MinimalEncoder(content, encoding);
+      mode = null;
+      version = null;
+      headerAndDataBits = null;
+      for (int[] range : VERSION_RANGES) {
+        // Within a range the segments, and so the bits, are the same for every version
+        Version lastInRange = Version.getVersionForNumber(range[1]);
+        List<MinimalEncoder.Segment> segments =
+            chooseSegments(content, minimalEncoder, lastInRange, encoding);
+        BitArray bits = appendSegments(content, segments, lastInRange, encoding);
+        if (bits == null) {
+          // A segment is too long for its character count field in this range
+          continue;
+        }
+        version = chooseVersion(bits.getSize(), ecLevel, range[0], range[1]);
+        if (version != null) {
+          // The mode of a QR Code with several segments is taken to be that of the first
+          mode = segments.get(0).getMode();
+          headerAndDataBits = bits;
+          break;
+        }
+      }
+      if (version == null) {
+        throw new WriterException("Data too big");
+      }
+    } else {
+      // Pick an encoding mode appropriate for the content. Note that this will not attempt to use
+      // multiple modes / segments even if that were more efficient; see EncodeHintType.QR_COMPACT.
+      mode = chooseMode(content, encoding);
+
+      // This will store the header information, like mode and
+      // length, as well as "header" segments like an ECI segment.
+      BitArray headerBits = new BitArray();
+
+      // Append ECI segment if applicable
+      if (mode == Mode.BYTE && !DEFAULT_BYTE_MODE_ENCODING.equals(encoding)) {
+        CharacterSetECI eci = CharacterSetECI.getCharacterSetECIByName(encoding);
+        if (eci != null) {
+          appendECI(eci, headerBits);
+        }
       }
-    }
 
-    // (With ECI in place,) Write the mode marker
-    appendModeInfo(mode, headerBits);
+      // (With ECI in place,) Write the mode marker
+      appendModeInfo(mode, headerBits);
 
-    // Collect data within the main segment, separately, to count its size if needed. Don't add it to
-    // main payload yet.
-    BitArray dataBits = new BitArray();
-    appendBytes(content, mode, dataBits, encoding);
+      // Collect data within the main segment, separately, to count its size if needed. Don't add it to
+      // main payload yet.
+      BitArray dataBits = new BitArray();
+      appendBytes(content, mode, dataBits, encoding);
 
-    // Hard part: need to know version to know how many bits length takes. But need to know how many
-    // bits it takes to know version. First we take a guess at version by assuming version will be
-    // the minimum, 1:
+      // Hard part: need to know version to know how many bits length takes. But need to know how many
+      // bits it takes to know version. First we take a guess at version by assuming version will be
+      // the minimum, 1:
 
-    int provisionalBitsNeeded = headerBits.getSize()
-        + mode.getCharacterCountBits(Version.getVersionForNumber(1))
-        + dataBits.getSize();
-    Version provisionalVersion = chooseVersion(provisionalBitsNeeded, ecLevel);
+      int provisionalBitsNeeded = headerBits.getSize()
+          + mode.getCharacterCountBits(Version.getVersionForNumber(1))
+          + dataBits.getSize();
+      Version provisionalVersion = chooseVersion(provisionalBitsNeeded, ecLevel);
 
-    // Use that guess to calculate the right version. I am still not sure this works in 100% of cases.
+      // Use that guess to calculate the right version. I am still not sure this works in 100% of cases.
 
-    int bitsNeeded = headerBits.getSize()
-        + mode.getCharacterCountBits(provisionalVersion)
-        + dataBits.getSize();
-    Version version = chooseVersion(bitsNeeded, ecLevel);
+      int bitsNeeded = headerBits.getSize()
+          + mode.getCharacterCountBits(provisionalVersion)
+          + dataBits.getSize();
+      version = chooseVersion(bitsNeeded, ecLevel);
 
-    BitArray headerAndDataBits = new BitArray();
-    headerAndDataBits.appendBitArray(headerBits);
-    // Find "length" of main segment and write it
-    int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
-    appendLengthInfo(numLetters, version, mode, headerAndDataBits);
-    // Put data together into the overall payload
-    headerAndDataBits.appendBitArray(dataBits);
+      headerAndDataBits = new BitArray();
+      headerAndDataBits.appendBitArray(headerBits);
+      // Find "length" of main segment and write it
+      int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : content.length();
+      appendLengthInfo(numLetters, version, mode, headerAndDataBits);
+      // Put data together into the overall payload
+      headerAndDataBits.appendBitArray(dataBits);
+    }
 
     Version.ECBlocks ecBlocks = version.getECBlocksForLevel(ecLevel);
     int numDataBytes = version.getTotalCodewords() - ecBlocks.getTotalECCodewords();
@@ -150,12 +192,19 @@ public final class Encoder {
 
     //  Choose the mask pattern and set to "qrCode".
     int dimension = version.getDimensionForVersion();
-    ByteMatrix matrix = new ByteMatrix(dimension, dimension);
-    int maskPattern = chooseMaskPattern(finalBits, ecLevel, version, matrix);
+    // The matrix is built once without mask; each mask pattern is then applied to a copy.
+    MatrixUtil.Template template = MatrixUtil.getTemplate(version);
+    ByteMatrix unmasked = new ByteMatrix(dimension, dimension);
+    MatrixUtil.buildUnmaskedMatrix(finalBits, template, unmasked);
+    ExecutorService executor = hints == null ? null : (ExecutorService) hints.get(EncodeHintType.QR_MASK_EXECUTOR);
+    int maskPattern = executor == null ?
+        chooseMaskPattern(unmasked, ecLevel, template) :
+        chooseMaskPatternInParallel(unmasked, ecLevel, template, executor);
     qrCode.setMaskPattern(maskPattern);
 
     // Build the matrix and set it to "qrCode".
-    MatrixUtil.buildMatrix(finalBits, ecLevel, version, maskPattern, matrix);
+    ByteMatrix matrix = new ByteMatrix(dimension, dimension);
+    MatrixUtil.applyMaskPattern(unmasked, ecLevel, template, maskPattern, matrix);
     qrCode.setMatrix(matrix);
 
     return qrCode;
@@ -226,17 +275,78 @@ public final class Encoder {
     return true;
   }
 
-  private static int chooseMaskPattern(BitArray bits,
+  private static int chooseMaskPattern(ByteMatrix unmasked,
                                        ErrorCorrectionLevel ecLevel,
-                                       Version version,
-                                       ByteMatrix matrix) throws WriterException {
+                                       MatrixUtil.Template template) throws WriterException {
 
+    ByteMatrix matrix = new ByteMatrix(unmasked.getWidth(), unmasked.getHeight());
+    BitPackedMatrix packed = new BitPackedMatrix(unmasked.getWidth(), unmasked.getHeight());
     int minPenalty = Integer.MAX_VALUE;  // Lower penalty is better.
     int bestMaskPattern = -1;
     // We try all mask patterns to choose the best one.
     for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
-      MatrixUtil.buildMatrix(bits, ecLevel, version, maskPattern, matrix);
-      int penalty = calculateMaskPenalty(matrix);
+      MatrixUtil.applyMaskPattern(unmasked, ecLevel, template, maskPattern, matrix);
+      packed.set(matrix);
+      int penalty = calculateMaskPenalty(packed);
+      if (penalty < minPenalty) {
+        minPenalty = penalty;
+        bestMaskPattern = maskPattern;
+      }
+    }
+    return bestMaskPattern;
+  }
+
+  /**
+   * Like {@link #chooseMaskPattern(ByteMatrix, ErrorCorrectionLevel, MatrixUtil.Template)}, but
+   * evaluates each mask pattern as a separate task run by the given executor. Ties still go to the
+   * lowest mask pattern.
+   */
+  private static int chooseMaskPatternInParallel(final ByteMatrix unmasked,
+                                                 final ErrorCorrectionLevel ecLevel,
+                                                 final MatrixUtil.Template template,
+                                                 ExecutorService executor) throws WriterException {
+    Collection<Callable<Integer>> tasks = new ArrayList<>(QRCode.NUM_MASK_PATTERNS);
+    for (int i = 0; i < QRCode.NUM_MASK_PATTERNS; i++) {
+      final int maskPattern = i;
+      tasks.add(new Callable<Integer>() {
+        @Override
+        public Integer call() throws WriterException {
+          ByteMatrix matrix = new ByteMatrix(unmasked.getWidth(), unmasked.getHeight());
+          MatrixUtil.applyMaskPattern(unmasked, ecLevel, template, maskPattern, matrix);
+          BitPackedMatrix packed = new BitPackedMatrix(matrix.getWidth(), matrix.getHeight());
+          packed.set(matrix);
+          return calculateMaskPenalty(packed);
+        }
+      });
+    }
+
+    List<Future<Integer>> futures;
+    try {
+      futures = executor.invokeAll(tasks);
+    } catch (InterruptedException ie) {
+      Thread.currentThread().interrupt();
+      throw new WriterException(ie);
+    }
+
+    int minPenalty = Integer.MAX_VALUE;  // Lower penalty is better.
+    int bestMaskPattern = -1;
+    for (int maskPattern = 0; maskPattern < QRCode.NUM_MASK_PATTERNS; maskPattern++) {
+      int penalty;
+      try {
+        penalty = futures.get(maskPattern).get();
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+        throw new WriterException(ie);
+      } catch (ExecutionException ee) {
+        Throwable cause = ee.getCause();
+        if (cause instanceof WriterException) {
+          throw (WriterException) cause;
+        }
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        throw new IllegalStateException(cause);
+      }
       if (penalty < minPenalty) {
         minPenalty = penalty;
         bestMaskPattern = maskPattern;
@@ -246,8 +356,23 @@ public final class Encoder {
   }
 
   private static Version chooseVersion(int numInputBits, ErrorCorrectionLevel ecLevel) throws WriterException {
+    Version version = chooseVersion(numInputBits, ecLevel, 1, 40);
+    if (version == null) {
+      throw new WriterException("Data too big");
+    }
+    return version;
+  }
+
+  /**
+   * @return the smallest version from {@code minVersion} to {@code maxVersion} inclusive which can
+   *  hold the given number of bits, or null if none can
+   */
+  private static Version chooseVersion(int numInputBits,
+                                       ErrorCorrectionLevel ecLevel,
+                                       int minVersion,
+                                       int maxVersion) {
     // In the following comments, we use numbers of Version 7-H.
-    for (int versionNum = 1; versionNum <= 40; versionNum++) {
+    for (int versionNum = minVersion; versionNum <= maxVersion; versionNum++) {
       Version version = Version.getVersionForNumber(versionNum);
       // numBytes = 196
       int numBytes = version.getTotalCodewords();
@@ -261,7 +386,87 @@ public final class Encoder {
         return version;
       }
     }
-    throw new WriterException("Data too big");
+    return null;
+  }
+
+  /**
+   * Splits content into the segments taking the fewest bits for versions in the same range as the
+   * given one, counting the ECI segment which byte mode segments may need.
+   */
+  private static List<MinimalEncoder.Segment> chooseSegments(String content,
+                                                             MinimalEncoder minimalEncoder,
+                                                             Version version,
+                                                             String encoding) {
+    List<MinimalEncoder.Segment> segments = minimalEncoder.getSegments(version, true);
+    if (CharacterSetECI.getCharacterSetECIByName(encoding) != null &&
+        needsECI(content, segments, encoding)) {
+      // Avoiding byte mode also avoids the ECI segment, which may make up for the extra bits
+      List<MinimalEncoder.Segment> withoutByte = minimalEncoder.getSegments(version, false);
+      if (withoutByte != null &&
+          minimalEncoder.getSize(withoutByte, version) <=
+          minimalEncoder.getSize(segments, version) + 12) {
+        return withoutByte;
+      }
+    }
+    return segments;
+  }
+
+  /**
+   * Byte mode segments need an ECI segment with a non-default encoding, and also with the default
+   * one if they are not all ASCII: readers commonly guess the encoding of each byte mode segment
+   * without one, and short segments are easily mistaken for another encoding.
+   */
+  private static boolean needsECI(String content,
+                                  List<MinimalEncoder.Segment> segments,
+                                  String encoding) {
+    boolean defaultEncoding = DEFAULT_BYTE_MODE_ENCODING.equals(encoding);
+    for (MinimalEncoder.Segment segment : segments) {
+      if (segment.getMode() == Mode.BYTE) {
+        if (!defaultEncoding) {
+          return true;
+        }
+        for (int i = segment.getStart(); i < segment.getEnd(); i++) {
+          if (content.charAt(i) > 0x7F) {
+            return true;
+          }
+        }
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Appends the segments, each with its mode and length, preceded by an ECI segment if
+   * {@link #needsECI(String, List, String)}.
+   *
+   * @return the appended bits, or null if the length of a segment does not fit in its character
+   *  count field for the given version
+   */
+  private static BitArray appendSegments(String content,
+                                         List<MinimalEncoder.Segment> segments,
+                                         Version version,
+                                         String encoding) throws WriterException {
+    BitArray bits = new BitArray();
+    if (needsECI(content, segments, encoding)) {
+      CharacterSetECI eci = CharacterSetECI.getCharacterSetECIByName(encoding);
+      if (eci != null) {
+        appendECI(eci, bits);
+      }
+    }
+    for (MinimalEncoder.Segment segment : segments) {
+      Mode mode = segment.getMode();
+      String text = content.substring(segment.getStart(), segment.getEnd());
+      BitArray dataBits = new BitArray();
+      appendBytes(text, mode, dataBits, encoding);
+      appendModeInfo(mode, bits);
+      int numLetters = mode == Mode.BYTE ? dataBits.getSizeInBytes() : text.length();
+      if (numLetters >= 1 << mode.getCharacterCountBits(version)) {
+        return null;
+      }
+      appendLengthInfo(numLetters, version, mode, bits);
+      bits.appendBitArray(dataBits);
+    }
+    return bits;
   }
 
   /**
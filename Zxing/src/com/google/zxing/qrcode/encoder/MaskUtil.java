@@ -34,107 +34,114 @@ final class MaskUtil {
   }
 
   /**
-   * Apply mask penalty rule 1 and return the penalty. Find repetitive cells with the same color and
-   * give penalty to them. Example: 00000 or 11111.
+   * Apply mask penalty rule 1 and return the penalty. Find runs of five or more cells of the same
+   * color, in rows and in columns, and give penalty to them. Example: 00000 or 11111. A run of
+   * k &gt;= 5 cells costs N1 + (k - 5), which is the number of its windows of 5 same-colored cells,
+   * k - 4, plus 2 for the window at its start.
    */
-  static int applyMaskPenaltyRule1(ByteMatrix matrix) {
-    return applyMaskPenaltyRule1Internal(matrix, true) + applyMaskPenaltyRule1Internal(matrix, false);
+  static int applyMaskPenaltyRule1(BitPackedMatrix matrix) {
+    int penalty = 0;
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      penalty += applyMaskPenaltyRule1Internal(matrix.getRow(y), matrix.getWidth());
+    }
+    for (int x = 0; x < matrix.getWidth(); x++) {
+      penalty += applyMaskPenaltyRule1Internal(matrix.getColumn(x), matrix.getHeight());
+    }
+    return penalty;
+  }
+
+  private static int applyMaskPenaltyRule1Internal(long[] line, int length) {
+    int windows = 0;
+    int runStarts = 0;
+    for (int k = 0; k < line.length; k++) {
+      int from = k << 6;
+      // Bit i of "changes" is set where cell i + s differs from cell i + s + 1
+      long changes0 = getWord(line, from) ^ getWord(line, from + 1);
+      long changes1 = getWord(line, from + 1) ^ getWord(line, from + 2);
+      long changes2 = getWord(line, from + 2) ^ getWord(line, from + 3);
+      long changes3 = getWord(line, from + 3) ^ getWord(line, from + 4);
+      long sameFive = ~(changes0 | changes1 | changes2 | changes3) & getLowBits(from, length - 4);
+      long changesBefore = getWord(line, from - 1) ^ getWord(line, from);
+      if (k == 0) {
+        changesBefore |= 1L;
+      }
+      windows += Long.bitCount(sameFive);
+      runStarts += Long.bitCount(sameFive & changesBefore);
+    }
+    return windows + (N1 - 1) * runStarts;
   }
 
   /**
    * Apply mask penalty rule 2 and return the penalty. Find 2x2 blocks with the same color and give
-   * penalty to them. This is actually equivalent to the spec's rule, which is to find MxN blocks and give a
-   * penalty proportional to (M-1)x(N-1), because this is the number of 2x2 blocks inside such a block.
+   * penalty to them. This is actually equivalent to the spec's rule, which is to find MxN blocks
+   * and give a penalty proportional to (M-1)x(N-1), because this is the number of 2x2 blocks
+   * inside such a block. A 2x2 block has one color where each of its columns does, and the top row
+   * does.
    */
-  static int applyMaskPenaltyRule2(ByteMatrix matrix) {
+  static int applyMaskPenaltyRule2(BitPackedMatrix matrix) {
     int penalty = 0;
-    byte[][] array = matrix.getArray();
     int width = matrix.getWidth();
-    int height = matrix.getHeight();
-    for (int y = 0; y < height - 1; y++) {
-      for (int x = 0; x < width - 1; x++) {
-        int value = array[y][x];
-        if (value == array[y][x + 1] && value == array[y + 1][x] && value == array[y + 1][x + 1]) {
-          penalty++;
-        }
+    for (int y = 0; y < matrix.getHeight() - 1; y++) {
+      long[] top = matrix.getRow(y);
+      long[] bottom = matrix.getRow(y + 1);
+      for (int k = 0; k < top.length; k++) {
+        int from = k << 6;
+        long left = getWord(top, from) ^ getWord(bottom, from);
+        long right = getWord(top, from + 1) ^ getWord(bottom, from + 1);
+        long across = getWord(top, from) ^ getWord(top, from + 1);
+        penalty += Long.bitCount(~(left | right | across) & getLowBits(from, width - 1));
       }
     }
     return N2 * penalty;
   }
 
   /**
-   * Apply mask penalty rule 3 and return the penalty. Find consecutive runs of 1:1:3:1:1:4
-   * starting with black, or 4:1:1:3:1:1 starting with white, and give penalty to them.  If we
-   * find patterns like 000010111010000, we give penalty once.
+   * Apply mask penalty rule 3 and return the penalty. Find consecutive runs of 1:1:3:1:1 starting
+   * with black, that is 1011101, with four white cells before or after them, in rows and in
+   * columns, and give penalty to them. Cells outside the matrix count as white. If we find patterns
+   * like 000010111010000, we give penalty once.
    */
-  static int applyMaskPenaltyRule3(ByteMatrix matrix) {
+  static int applyMaskPenaltyRule3(BitPackedMatrix matrix) {
     int numPenalties = 0;
-    byte[][] array = matrix.getArray();
-    int width = matrix.getWidth();
-    int height = matrix.getHeight();
-    for (int y = 0; y < height; y++) {
-      for (int x = 0; x < width; x++) {
-        byte[] arrayY = array[y];  // We can at least optimize this access
-        if (x + 6 < width &&
-            arrayY[x] == 1 &&
-            arrayY[x +  1] == 0 &&
-            arrayY[x +  2] == 1 &&
-            arrayY[x +  3] == 1 &&
-            arrayY[x +  4] == 1 &&
-            arrayY[x +  5] == 0 &&
-            arrayY[x +  6] == 1 &&
-            (isWhiteHorizontal(arrayY, x - 4, x) || isWhiteHorizontal(arrayY, x + 7, x + 11))) {
-          numPenalties++;
-        }
-        if (y + 6 < height &&
-            array[y][x] == 1  &&
-            array[y +  1][x] == 0  &&
-            array[y +  2][x] == 1  &&
-            array[y +  3][x] == 1  &&
-            array[y +  4][x] == 1  &&
-            array[y +  5][x] == 0  &&
-            array[y +  6][x] == 1 &&
-            (isWhiteVertical(array, x, y - 4, y) || isWhiteVertical(array, x, y + 7, y + 11))) {
-          numPenalties++;
-        }
-      }
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      numPenalties += applyMaskPenaltyRule3Internal(matrix.getRow(y));
     }
-    return numPenalties * N3;
-  }
-
-  private static boolean isWhiteHorizontal(byte[] rowArray, int from, int to) {
-    for (int i = from; i < to; i++) {
-      if (i >= 0 && i < rowArray.length && rowArray[i] == 1) {
-        return false;
-      }
+    for (int x = 0; x < matrix.getWidth(); x++) {
+      numPenalties += applyMaskPenaltyRule3Internal(matrix.getColumn(x));
     }
-    return true;
+    return numPenalties * N3;
   }
 
-  private static boolean isWhiteVertical(byte[][] array, int col, int from, int to) {
-    for (int i = from; i < to; i++) {
-      if (i >= 0 && i < array.length && array[i][col] == 1) {
-        return false;
+  private static int applyMaskPenaltyRule3Internal(long[] line) {
+    int numPenalties = 0;
+    for (int k = 0; k < line.length; k++) {
+      int from = k << 6;
+      // Bit i is set where 1011101 starts at cell i; it can't run past the end of the line,
+      // where cells are 0
+      long pattern = getWord(line, from) & ~getWord(line, from + 1) & getWord(line, from + 2) &
+          getWord(line, from + 3) & getWord(line, from + 4) & ~getWord(line, from + 5) &
+          getWord(line, from + 6);
+      if (pattern == 0) {
+        continue;
       }
+      long blackBefore = getWord(line, from - 4) | getWord(line, from - 3) |
+          getWord(line, from - 2) | getWord(line, from - 1);
+      long blackAfter = getWord(line, from + 7) | getWord(line, from + 8) |
+          getWord(line, from + 9) | getWord(line, from + 10);
+      numPenalties += Long.bitCount(pattern & ~(blackBefore & blackAfter));
     }
-    return true;
+    return numPenalties;
   }
 
   /**
    * Apply mask penalty rule 4 and return the penalty. Calculate the ratio of dark cells and give
    * penalty if the ratio is far from 50%. It gives 10 penalty for 5% distance.
    */
-  static int applyMaskPenaltyRule4(ByteMatrix matrix) {
+  static int applyMaskPenaltyRule4(BitPackedMatrix matrix) {
     int numDarkCells = 0;
-    byte[][] array = matrix.getArray();
-    int width = matrix.getWidth();
-    int height = matrix.getHeight();
-    for (int y = 0; y < height; y++) {
-      byte[] arrayY = array[y];
-      for (int x = 0; x < width; x++) {
-        if (arrayY[x] == 1) {
-          numDarkCells++;
-        }
+    for (int y = 0; y < matrix.getHeight(); y++) {
+      for (long word : matrix.getRow(y)) {
+        numDarkCells += Long.bitCount(word);
       }
     }
     int numTotalCells = matrix.getHeight() * matrix.getWidth();
@@ -142,6 +149,32 @@ final class MaskUtil {
     return fivePercentVariances * N4;
   }
 
+  /**
+   * @return the 64 cells of the packed line starting at cell "from", which may be negative,
+   *  as the bits of a long; cells outside the line are 0
+   */
+  private static long getWord(long[] line, int from) {
+    int k = from >> 6;
+    int offset = from & 63;
+    long low = k >= 0 && k < line.length ? line[k] : 0L;
+    if (offset == 0) {
+      return low;
+    }
+    long high = k + 1 >= 0 && k + 1 < line.length ? line[k + 1] : 0L;
+    return (low >>> offset) | (high << (64 - offset));
+  }
+
+  /**
+   * @return the bits of the word starting at cell "from" for cells before "limit"
+   */
+  private static long getLowBits(int from, int limit) {
+    int count = limit - from;
+    if (count <= 0) {
+      return 0L;
+    }
+    return count >= 64 ? -1L : (1L << count) - 1;
+  }
+
   /**
    * Return the mask bit for "getMaskPattern" at "x" and "y". See 8.8 of JISX0510:2004 for mask
    * pattern conditions.
@@ -183,35 +216,4 @@ final class MaskUtil {
     return intermediate == 0;
   }
 
-  /**
-   * Helper function for applyMaskPenaltyRule1. We need this for doing this calculation in both
-   * vertical and horizontal orders respectively.
-   */
-  private static int applyMaskPenaltyRule1Internal(ByteMatrix matrix, boolean isHorizontal) {
-    int penalty = 0;
-    int iLimit = isHorizontal ? matrix.getHeight() : matrix.getWidth();
-    int jLimit = isHorizontal ? matrix.getWidth() : matrix.getHeight();
-    byte[][] array = matrix.getArray();
-    for (int i = 0; i < iLimit; i++) {
-      int numSameBitCells = 0;
-      int prevBit = -1;
-      for (int j = 0; j < jLimit; j++) {
-        int bit = isHorizontal ? array[i][j] : array[j][i];
-        if (bit == prevBit) {
-          numSameBitCells++;
-        } else {
-          if (numSameBitCells >= 5) {
-            penalty += N1 + (numSameBitCells - 5);
-          }
-          numSameBitCells = 1;  // Include the cell itself.
-          prevBit = bit;
-        }
-      }
-      if (numSameBitCells >= 5) {
-        penalty += N1 + (numSameBitCells - 5);
-      }
-    }
-    return penalty;
-  }
-
 }
@@ -21,6 +21,8 @@ import com.google.zxing.common.BitArray;
 import com.google.zxing.qrcode.decoder.ErrorCorrectionLevel;
 import com.google.zxing.qrcode.decoder.Version;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
 /**
  * @author satorux@google.com (Satoru Takabayashi) - creator
  * @author dswitkin@google.com (Daniel Switkin) - ported from C++
@@ -119,6 +121,21 @@ final class MatrixUtil {
   private static final int TYPE_INFO_POLY = 0x537;
   private static final int TYPE_INFO_MASK_PATTERN = 0x5412;
 
+  // Type information for each error correction level and mask pattern, indexed by the 5 bits
+  // (error correction level bits, then mask pattern) it encodes.
+  private static final int[] TYPE_INFO = new int[32];
+
+  static {
+    for (int typeInfo = 0; typeInfo < TYPE_INFO.length; typeInfo++) {
+      int bchCode = calculateBCHCode(typeInfo, TYPE_INFO_POLY);
+      TYPE_INFO[typeInfo] = ((typeInfo << 10) | bchCode) ^ TYPE_INFO_MASK_PATTERN;
+    }
+  }
+
+  // Templates of the parts of a QR Code depending only on the version, by version number - 1,
+  // built when first needed.
+  private static final AtomicReferenceArray<Template> TEMPLATES = new AtomicReferenceArray<>(40);
+
   // Set all cells to -1.  -1 means that the cell is empty (not set yet).
   //
   // JAVAPORT: We shouldn't need to do this at all. The code should be rewritten to begin encoding
@@ -127,21 +144,140 @@ final class MatrixUtil {
     matrix.clear((byte) -1);
   }
 
-  // Build 2D matrix of QR Code from "dataBits" with "ecLevel", "version" and "getMaskPattern". On
-  // success, store the result in "matrix" and return true.
-  static void buildMatrix(BitArray dataBits,
-                          ErrorCorrectionLevel ecLevel,
-                          Version version,
-                          int maskPattern,
-                          ByteMatrix matrix) throws WriterException {
-    clearMatrix(matrix);
-    embedBasicPatterns(version, matrix);
-    // Type information appear with any version.
+  // Build 2D matrix of QR Code from "dataBits" with the "template" of its version, without masking
+  // or type information, so that any mask pattern can then be tried with "applyMaskPattern" alone.
+  static void buildUnmaskedMatrix(BitArray dataBits,
+                                  Template template,
+                                  ByteMatrix unmasked) throws WriterException {
+    copyMatrix(template.functionPatterns, unmasked);
+    embedDataBits(dataBits, template, unmasked);
+  }
+
+  // Store in "matrix" the matrix built by "buildUnmaskedMatrix" with data cells masked by
+  // "maskPattern", and the type information for "ecLevel" and "maskPattern".
+  static void applyMaskPattern(ByteMatrix unmasked,
+                               ErrorCorrectionLevel ecLevel,
+                               Template template,
+                               int maskPattern,
+                               ByteMatrix matrix) throws WriterException {
+    copyMatrix(unmasked, matrix);
+    int[] positions = template.dataPositions;
+    int[] maskBits = template.maskBits[maskPattern];
+    byte[][] array = matrix.getArray();
+    for (int k = 0; k < maskBits.length; k++) {
+      int word = maskBits[k];
+      while (word != 0) {
+        int position = positions[(k << 5) + Integer.numberOfTrailingZeros(word)];
+        array[position >>> 8][position & 0xFF] ^= 1;
+        word &= word - 1;
+      }
+    }
     embedTypeInfo(ecLevel, maskPattern, matrix);
-    // Version info appear if version >= 7.
-    maybeEmbedVersionInfo(version, matrix);
-    // Data should be embedded at end.
-    embedDataBits(dataBits, maskPattern, matrix);
+  }
+
+  // Return the template of "version", building it if need be. Threads building the same template
+  // at once each build it, and all then share the first one stored.
+  static Template getTemplate(Version version) throws WriterException {
+    int index = version.getVersionNumber() - 1;
+    Template template = TEMPLATES.get(index);
+    if (template == null) {
+      int dimension = version.getDimensionForVersion();
+      ByteMatrix functionPatterns = new ByteMatrix(dimension, dimension);
+      clearMatrix(functionPatterns);
+      embedBasicPatterns(version, functionPatterns);
+      // Type information cells are reserved here, and set for each symbol.
+      embedTypeInfo(ErrorCorrectionLevel.L, 0, functionPatterns);
+      maybeEmbedVersionInfo(version, functionPatterns);
+      int[] positions = getDataPositions(functionPatterns);
+      // Mask bits of the data cells, in the order they are filled, 32 to an int as in BitArray
+      int[][] maskBits = new int[QRCode.NUM_MASK_PATTERNS][(positions.length + 31) >> 5];
+      for (int maskPattern = 0; maskPattern < maskBits.length; maskPattern++) {
+        for (int i = 0; i < positions.length; i++) {
+          if (MaskUtil.getDataMaskBit(maskPattern, positions[i] & 0xFF, positions[i] >>> 8)) {
+            maskBits[maskPattern][i >> 5] |= 1 << (i & 0x1F);
+          }
+        }
+      }
+      template = new Template(functionPatterns, positions, maskBits);
+      if (!TEMPLATES.compareAndSet(index, null, template)) {
+        template = TEMPLATES.get(index);
+      }
+    }
+    return template;
+  }
+
+  private static void copyMatrix(ByteMatrix from, ByteMatrix to) {
+    byte[][] fromArray = from.getArray();
+    byte[][] toArray = to.getArray();
+    for (int y = 0; y < fromArray.length; y++) {
+      System.arraycopy(fromArray[y], 0, toArray[y], 0, fromArray[y].length);
+    }
+  }
+
+  // Return the empty cells of "matrix" in the order "embedDataBits" fills them, each as
+  // (y << 8) | x.
+  private static int[] getDataPositions(ByteMatrix matrix) {
+    int numEmpty = 0;
+    for (byte[] row : matrix.getArray()) {
+      for (byte value : row) {
+        if (isEmpty(value)) {
+          numEmpty++;
+        }
+      }
+    }
+    int[] positions = new int[numEmpty];
+    int index = 0;
+    int direction = -1;
+    // Start from the right bottom cell.
+    int x = matrix.getWidth() - 1;
+    int y = matrix.getHeight() - 1;
+    while (x > 0) {
+      // Skip the vertical timing pattern.
+      if (x == 6) {
+        x -= 1;
+      }
+      while (y >= 0 && y < matrix.getHeight()) {
+        for (int i = 0; i < 2; ++i) {
+          int xx = x - i;
+          if (isEmpty(matrix.get(xx, y))) {
+            positions[index++] = (y << 8) | xx;
+          }
+        }
+        y += direction;
+      }
+      direction = -direction;  // Reverse the direction.
+      y += direction;
+      x -= 2;  // Move to the left.
+    }
+    return positions;
+  }
+
+  // Embed "dataBits" unmasked in the cells of "template". Cells left over after the data bits are
+  // padding, filled with 0 as described in 8.4.9 of JISX0510:2004 (p. 24).
+  private static void embedDataBits(BitArray dataBits,
+                                    Template template,
+                                    ByteMatrix matrix) throws WriterException {
+    int[] positions = template.dataPositions;
+    int numBits = dataBits.getSize();
+    // All bits should be consumed.
+    if (numBits > positions.length) {
+      throw new WriterException("Not all bits consumed: " + positions.length + '/' + numBits);
+    }
+    int[] bits = dataBits.getBitArray();
+    byte[][] array = matrix.getArray();
+    for (int k = 0; k << 5 < positions.length; k++) {
+      int from = k << 5;
+      int word = from < numBits ? bits[k] : 0;
+      if (numBits - from < 32) {
+        word &= (1 << Math.max(numBits - from, 0)) - 1;
+      }
+      int to = Math.min(from + 32, positions.length);
+      for (int i = from; i < to; i++) {
+        int position = positions[i];
+        array[position >>> 8][position & 0xFF] = (byte) (word & 1);
+        word >>>= 1;
+      }
+    }
   }
 
   // Embed basic patterns. On success, modify the matrix and return true.
@@ -165,13 +301,11 @@ final class MatrixUtil {
   // Embed type information. On success, modify the matrix.
   static void embedTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern, ByteMatrix matrix)
       throws WriterException {
-    BitArray typeInfoBits = new BitArray();
-    makeTypeInfoBits(ecLevel, maskPattern, typeInfoBits);
+    int typeInfo = getTypeInfo(ecLevel, maskPattern);
 
-    for (int i = 0; i < typeInfoBits.getSize(); ++i) {
-      // Place bits in LSB to MSB order.  LSB (least significant bit) is the last value in
-      // "typeInfoBits".
-      boolean bit = typeInfoBits.get(typeInfoBits.getSize() - 1 - i);
+    for (int i = 0; i < 15; ++i) {
+      // Place bits in LSB to MSB order.
+      boolean bit = ((typeInfo >> i) & 1) != 0;
 
       // Type info bits at the left top corner. See 8.9 of JISX0510:2004 (p.46).
       int x1 = TYPE_INFO_COORDINATES[i][0];
@@ -215,56 +349,6 @@ final class MatrixUtil {
     }
   }
 
-  // Embed "dataBits" using "getMaskPattern". On success, modify the matrix and return true.
-  // For debugging purposes, it skips masking process if "getMaskPattern" is -1.
-  // See 8.7 of JISX0510:2004 (p.38) for how to embed data bits.
-  static void embedDataBits(BitArray dataBits, int maskPattern, ByteMatrix matrix)
-      throws WriterException {
-    int bitIndex = 0;
-    int direction = -1;
-    // Start from the right bottom cell.
-    int x = matrix.getWidth() - 1;
-    int y = matrix.getHeight() - 1;
-    while (x > 0) {
-      // Skip the vertical timing pattern.
-      if (x == 6) {
-        x -= 1;
-      }
-      while (y >= 0 && y < matrix.getHeight()) {
-        for (int i = 0; i < 2; ++i) {
-          int xx = x - i;
-          // Skip the cell if it's not empty.
-          if (!isEmpty(matrix.get(xx, y))) {
-            continue;
-          }
-          boolean bit;
-          if (bitIndex < dataBits.getSize()) {
-            bit = dataBits.get(bitIndex);
-            ++bitIndex;
-          } else {
-            // Padding bit. If there is no bit left, we'll fill the left cells with 0, as described
-            // in 8.4.9 of JISX0510:2004 (p. 24).
-            bit = false;
-          }
-
-          // Skip masking if mask_pattern is -1.
-          if (maskPattern != -1 && MaskUtil.getDataMaskBit(maskPattern, xx, y)) {
-            bit = !bit;
-          }
-          matrix.set(xx, y, bit);
-        }
-        y += direction;
-      }
-      direction = -direction;  // Reverse the direction.
-      y += direction;
-      x -= 2;  // Move to the left.
-    }
-    // All bits should be consumed.
-    if (bitIndex != dataBits.getSize()) {
-      throw new WriterException("Not all bits consumed: " + bitIndex + '/' + dataBits.getSize());
-    }
-  }
-
   // Return the position of the most significant bit set (to one) in the "value". The most
   // significant bit is position 32. If there is no bit set, return 0. Examples:
   // - findMSBSet(0) => 0
@@ -325,24 +409,20 @@ final class MatrixUtil {
   // JISX0510:2004 (p.45) for details.
   static void makeTypeInfoBits(ErrorCorrectionLevel ecLevel, int maskPattern, BitArray bits)
       throws WriterException {
-    if (!QRCode.isValidMaskPattern(maskPattern)) {
-      throw new WriterException("Invalid mask pattern");
-    }
-    int typeInfo = (ecLevel.getBits() << 3) | maskPattern;
-    bits.appendBits(typeInfo, 5);
-
-    int bchCode = calculateBCHCode(typeInfo, TYPE_INFO_POLY);
-    bits.appendBits(bchCode, 10);
-
-    BitArray maskBits = new BitArray();
-    maskBits.appendBits(TYPE_INFO_MASK_PATTERN, 15);
-    bits.xor(maskBits);
+    bits.appendBits(getTypeInfo(ecLevel, maskPattern), 15);
 
     if (bits.getSize() != 15) {  // Just in case.
       throw new WriterException("should not happen but we got: " + bits.getSize());
     }
   }
 
+  private static int getTypeInfo(ErrorCorrectionLevel ecLevel, int maskPattern) throws WriterException {
+    if (!QRCode.isValidMaskPattern(maskPattern)) {
+      throw new WriterException("Invalid mask pattern");
+    }
+    return TYPE_INFO[(ecLevel.getBits() << 3) | maskPattern];
+  }
+
   // Make bit vector of version information. On success, store the result in "bits" and return true.
   // See 8.10 of JISX0510:2004 (p.45) for details.
   static void makeVersionInfoBits(Version version, BitArray bits) throws WriterException {
@@ -482,4 +562,20 @@ final class MatrixUtil {
     }
   }
 
+  // The function patterns and version information of a version, with the type information cells
+  // reserved, the positions of its data cells in the order they are filled, and the bits of each
+  // mask pattern for those cells. Shared, so never modified once built.
+  static final class Template {
+
+    private final ByteMatrix functionPatterns;
+    private final int[] dataPositions;
+    private final int[][] maskBits;
+
+    Template(ByteMatrix functionPatterns, int[] dataPositions, int[][] maskBits) {
+      this.functionPatterns = functionPatterns;
+      this.dataPositions = dataPositions;
+      this.maskBits = maskBits;
+    }
+  }
+
 }
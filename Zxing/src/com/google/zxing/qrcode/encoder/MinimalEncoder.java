@@ -0,0 +1,262 @@
+/*
+ * Copyright 2014 ZXing authors
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.google.zxing.qrcode.encoder;
+
+import com.google.zxing.WriterException;
+import com.google.zxing.qrcode.decoder.Mode;
+import com.google.zxing.qrcode.decoder.Version;
+
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits content into segments of numeric, alphanumeric, byte and Kanji mode, unlike
+ * {@link Encoder#chooseMode(String)} which picks one mode for all of it, so as to take the fewest
+ * bits.
+ *
+ * <p>The cheapest way to reach each state after each character is computed in a single pass, a
+ * state being the mode of the segment being written, and for numeric and alphanumeric mode the
+ * number of characters of the segment modulo 3 or 2. Costs are exact numbers of bits, since the
+ * bits a character adds to a segment only depend on that state. The number of bits of a segment
+ * header depends on the version though, so segments are chosen for a given version.</p>
+ */
+final class MinimalEncoder {
+
+  // States; NUMERIC_1 has one digit pending in the last group of three, and so on
+  private static final int NUMERIC_0 = 0;
+  private static final int NUMERIC_1 = 1;
+  private static final int NUMERIC_2 = 2;
+  private static final int ALPHANUMERIC_0 = 3;
+  private static final int ALPHANUMERIC_1 = 4;
+  private static final int BYTE = 5;
+  private static final int KANJI = 6;
+  private static final int NUM_STATES = 7;
+  // Added to the state before a character which starts a new segment, which may be -1
+  private static final int NEW_SEGMENT = NUM_STATES + 1;
+
+  private static final Mode[] STATE_MODES = {
+      Mode.NUMERIC, Mode.NUMERIC, Mode.NUMERIC, Mode.ALPHANUMERIC, Mode.ALPHANUMERIC, Mode.BYTE,
+      Mode.KANJI,
+  };
+
+  private final String content;
+  // Number of bytes each character takes in byte mode; 0 for the second half of a surrogate pair
+  private final int[] byteLengths;
+  private final boolean[] isKanji;
+
+  /**
+   * @param content text to encode
+   * @param encoding character encoding of byte mode segments; Kanji mode is only used with
+   *  Shift_JIS, as in {@link Encoder#chooseMode(String)}
+   * @throws WriterException if the encoding is not supported
+   */
+  MinimalEncoder(String content, String encoding) throws WriterException {
+    this.content = content;
+    int length = content.length();
+    byteLengths = new int[length];
+    isKanji = new boolean[length];
+    boolean shiftJIS = "Shift_JIS".equals(encoding);
+    boolean singleByte = Encoder.DEFAULT_BYTE_MODE_ENCODING.equals(encoding);
+    try {
+      for (int i = 0; i < length; i++) {
+        char c = content.charAt(i);
+        if (Character.isHighSurrogate(c) && i + 1 < length &&
+            Character.isLowSurrogate(content.charAt(i + 1))) {
+          byteLengths[i] = content.substring(i, i + 2).getBytes(encoding).length;
+          i++;
+        } else if (singleByte) {
+          byteLengths[i] = 1;
+        } else {
+          byte[] bytes = String.valueOf(c).getBytes(encoding);
+          byteLengths[i] = bytes.length;
+          isKanji[i] = shiftJIS && bytes.length == 2 &&
+              isKanjiCode(((bytes[0] & 0xFF) << 8) | (bytes[1] & 0xFF));
+        }
+      }
+    } catch (UnsupportedEncodingException uee) {
+      throw new WriterException(uee);
+    }
+  }
+
+  private static boolean isKanjiCode(int code) {
+    return (code >= 0x8140 && code <= 0x9ffc) || (code >= 0xe040 && code <= 0xebbf);
+  }
+
+  /**
+   * @param version version whose character count fields the segment headers will have; the
+   *  segments are the same for all versions in the same range (1-9, 10-26 or 27-40)
+   * @param allowByte false not to use byte mode, when content is encodable without it
+   * @return the segments taking the fewest bits, or null if the content cannot be encoded
+   *  without byte mode when that is not allowed
+   */
+  List<Segment> getSegments(Version version, boolean allowByte) {
+    int length = content.length();
+    if (length == 0) {
+      return Collections.singletonList(new Segment(Mode.BYTE, 0, 0));
+    }
+    int[] headerBits = new int[NUM_STATES];
+    for (int state = 0; state < NUM_STATES; state++) {
+      headerBits[state] = 4 + STATE_MODES[state].getCharacterCountBits(version);
+    }
+
+    // costs[i][state] is the fewest bits for the first i characters, ending in "state", and
+    // previous[i][state] the state before the last character, or -1 for none, plus NEW_SEGMENT
+    // if the last character started a new segment
+    int[][] costs = new int[length + 1][NUM_STATES];
+    int[][] previous = new int[length + 1][NUM_STATES];
+    for (int[] row : costs) {
+      Arrays.fill(row, Integer.MAX_VALUE);
+    }
+    int bestState = -1;
+    for (int i = 0; i < length; i++) {
+      int[] from = costs[i];
+      int[] to = costs[i + 1];
+      int[] toPrevious = previous[i + 1];
+      char c = content.charAt(i);
+      int byteLength = byteLengths[i];
+      if (i > 0 && bestState == -1) {
+        return null;
+      }
+      int bestCost = i == 0 ? 0 : from[bestState];
+
+      if (byteLength == 0) {
+        // Second half of a surrogate pair, already counted
+        to[BYTE] = from[BYTE];
+        toPrevious[BYTE] = BYTE;
+        bestState = from[BYTE] == Integer.MAX_VALUE ? -1 : BYTE;
+        continue;
+      }
+      if (c >= '0' && c <= '9') {
+        relax(to, toPrevious, NUMERIC_1, bestCost, headerBits[NUMERIC_1] + 4, bestState + NEW_SEGMENT);
+        relax(to, toPrevious, NUMERIC_1, from[NUMERIC_0], 4, NUMERIC_0);
+        relax(to, toPrevious, NUMERIC_2, from[NUMERIC_1], 3, NUMERIC_1);
+        relax(to, toPrevious, NUMERIC_0, from[NUMERIC_2], 3, NUMERIC_2);
+      }
+      if (Encoder.getAlphanumericCode(c) != -1) {
+        relax(to, toPrevious, ALPHANUMERIC_1, bestCost, headerBits[ALPHANUMERIC_1] + 6,
+            bestState + NEW_SEGMENT);
+        relax(to, toPrevious, ALPHANUMERIC_1, from[ALPHANUMERIC_0], 6, ALPHANUMERIC_0);
+        relax(to, toPrevious, ALPHANUMERIC_0, from[ALPHANUMERIC_1], 5, ALPHANUMERIC_1);
+      }
+      if (allowByte) {
+        relax(to, toPrevious, BYTE, bestCost, headerBits[BYTE] + 8 * byteLength, bestState + NEW_SEGMENT);
+        relax(to, toPrevious, BYTE, from[BYTE], 8 * byteLength, BYTE);
+      }
+      if (isKanji[i]) {
+        relax(to, toPrevious, KANJI, bestCost, headerBits[KANJI] + 13, bestState + NEW_SEGMENT);
+        relax(to, toPrevious, KANJI, from[KANJI], 13, KANJI);
+      }
+
+      bestState = -1;
+      for (int state = 0; state < NUM_STATES; state++) {
+        if (to[state] != Integer.MAX_VALUE && (bestState == -1 || to[state] < to[bestState])) {
+          bestState = state;
+        }
+      }
+    }
+    if (bestState == -1) {
+      return null;
+    }
+
+    // Walk back through the states, cutting a segment wherever a new one started
+    List<Segment> segments = new ArrayList<>();
+    int state = bestState;
+    int end = length;
+    for (int i = length; i > 0; i--) {
+      int before = previous[i][state];
+      if (before >= NUM_STATES) {
+        segments.add(new Segment(STATE_MODES[state], i - 1, end));
+        end = i - 1;
+        before -= NEW_SEGMENT;
+      }
+      state = before;
+    }
+    Collections.reverse(segments);
+    return segments;
+  }
+
+  /**
+   * @return number of bits the segments take with headers for the given version, not counting
+   *  any ECI segment
+   */
+  int getSize(List<Segment> segments, Version version) {
+    int size = 0;
+    for (Segment segment : segments) {
+      Mode mode = segment.getMode();
+      int numLetters = segment.getEnd() - segment.getStart();
+      size += 4 + mode.getCharacterCountBits(version);
+      switch (mode) {
+        case NUMERIC:
+          size += 10 * (numLetters / 3) + (numLetters % 3 == 0 ? 0 : 3 * (numLetters % 3) + 1);
+          break;
+        case ALPHANUMERIC:
+          size += 11 * (numLetters / 2) + 6 * (numLetters % 2);
+          break;
+        case KANJI:
+          size += 13 * numLetters;
+          break;
+        default:
+          for (int i = segment.getStart(); i < segment.getEnd(); i++) {
+            size += 8 * byteLengths[i];
+          }
+          break;
+      }
+    }
+    return size;
+  }
+
+  private static void relax(int[] costs, int[] previous, int state, int fromCost, int addedCost,
+                            int fromState) {
+    if (fromCost != Integer.MAX_VALUE && fromCost + addedCost < costs[state]) {
+      costs[state] = fromCost + addedCost;
+      previous[state] = fromState;
+    }
+  }
+
+  /**
+   * A run of characters of the content, from {@code start} inclusive to {@code end} exclusive,
+   * to be encoded in one mode.
+   */
+  static final class Segment {
+
+    private final Mode mode;
+    private final int start;
+    private final int end;
+
+    Segment(Mode mode, int start, int end) {
+      this.mode = mode;
+      this.start = start;
+      this.end = end;
+    }
+
+    Mode getMode() {
+      return mode;
+    }
+
+    int getStart() {
+      return start;
+    }
+
+    int getEnd() {
+      return end;
+    }
+  }
+
+}